@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.auth.saml2.common;
+
+/**
+ * Bean class that represents the cryptographic operation configuration of SAML2 messages.
+ * This class must read configuration from deployment.yaml.
+ */
+public class CryptoConfig {
+
+    private static volatile CryptoConfig instance = new CryptoConfig();
+
+    private CryptoConfig() {
+
+    }
+
+    public static CryptoConfig getInstance() {
+        return instance;
+    }
+
+    private boolean signingLimitEnabled = false;
+    private int signingConcurrency = Runtime.getRuntime().availableProcessors();
+    // milliseconds a signing request waits for a permit before it is rejected
+    private long signingPermitTimeout = 1000;
+    // JCA provider preferred for signing, signature verification and encryption. JCA provider order is used if unset.
+    private String providerName = null;
+
+    public boolean isSigningLimitEnabled() {
+        return signingLimitEnabled;
+    }
+
+    public void setSigningLimitEnabled(boolean signingLimitEnabled) {
+        this.signingLimitEnabled = signingLimitEnabled;
+    }
+
+    public int getSigningConcurrency() {
+        return signingConcurrency;
+    }
+
+    public void setSigningConcurrency(int signingConcurrency) {
+        this.signingConcurrency = signingConcurrency;
+    }
+
+    public long getSigningPermitTimeout() {
+        return signingPermitTimeout;
+    }
+
+    public void setSigningPermitTimeout(long signingPermitTimeout) {
+        this.signingPermitTimeout = signingPermitTimeout;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public void setProviderName(String providerName) {
+        this.providerName = providerName;
+    }
+}
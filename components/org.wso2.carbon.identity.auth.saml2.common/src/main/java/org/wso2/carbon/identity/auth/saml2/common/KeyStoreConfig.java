@@ -19,6 +19,8 @@
 package org.wso2.carbon.identity.auth.saml2.common;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Bean class that represents the carbon server's key store configuration.
@@ -41,6 +43,10 @@ public class KeyStoreConfig {
     private String keyStoreType = "JKS";
     private String keyStorePassword = "wso2carbon";
     private String keyStoreAlias = "wso2carbon";
+    // Additional key aliases that service providers may select to sign with, besides keyStoreAlias.
+    private List<String> signingKeyAliases = new ArrayList<>();
+    private boolean keyStoreReloadEnabled = true;
+    private long keyStoreReloadDelay = 1000;
 
     public String getKeyStoreLocation() {
         return keyStoreLocation;
@@ -73,4 +79,28 @@ public class KeyStoreConfig {
     public void setKeyStoreAlias(String keyStoreAlias) {
         this.keyStoreAlias = keyStoreAlias;
     }
+
+    public List<String> getSigningKeyAliases() {
+        return signingKeyAliases;
+    }
+
+    public void setSigningKeyAliases(List<String> signingKeyAliases) {
+        this.signingKeyAliases = signingKeyAliases;
+    }
+
+    public boolean isKeyStoreReloadEnabled() {
+        return keyStoreReloadEnabled;
+    }
+
+    public void setKeyStoreReloadEnabled(boolean keyStoreReloadEnabled) {
+        this.keyStoreReloadEnabled = keyStoreReloadEnabled;
+    }
+
+    public long getKeyStoreReloadDelay() {
+        return keyStoreReloadDelay;
+    }
+
+    public void setKeyStoreReloadDelay(long keyStoreReloadDelay) {
+        this.keyStoreReloadDelay = keyStoreReloadDelay;
+    }
 }
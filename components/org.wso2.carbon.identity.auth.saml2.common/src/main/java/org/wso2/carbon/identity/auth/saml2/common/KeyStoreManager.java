@@ -29,15 +29,24 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Class that will encapsulate the key store management functionality of a carbon instance.
+ * <p/>
+ * The signing credentials of the default key alias and of every alias listed in
+ * {@link KeyStoreConfig#getSigningKeyAliases()} are unwrapped when the key store is loaded, so that selecting a
+ * signing key is a map lookup. The loaded key store and the credentials unwrapped from it are held together in an
+ * immutable snapshot which is replaced as a whole when the key store is reloaded. Readers work on the snapshot they
+ * obtained, so a reload never blocks signing and never mixes a certificate of one key store with a private key of
+ * another.
  */
 public class KeyStoreManager {
 
     private static volatile KeyStoreManager instance = new KeyStoreManager();
-    private KeyStore serverKeyStore = null;
-
+    private volatile LoadedKeyStore loadedKeyStore = null;
 
     private KeyStoreManager() {
         this.initKeyStore();
@@ -47,60 +56,137 @@ public class KeyStoreManager {
         return instance;
     }
 
-    private KeyStore initKeyStore() {
+    private void initKeyStore() {
+
+        if (this.loadedKeyStore == null) {
+            this.loadedKeyStore = new LoadedKeyStore(loadKeyStore());
+        }
+    }
+
+    /**
+     * Reloads the server key store from the configured location and swaps it in together with freshly unwrapped
+     * signing credentials. The new key store is fully loaded before it is published, so if loading fails the
+     * previously loaded key store stays in use.
+     */
+    public void reloadKeyStore() {
+
+        this.loadedKeyStore = new LoadedKeyStore(loadKeyStore());
+    }
+
+    private KeyStore loadKeyStore() {
 
         String keyStorePath = KeyStoreConfig.getInstance().getKeyStoreLocation();
         String keyStorePassword = KeyStoreConfig.getInstance().getKeyStorePassword();
         String keyStoreType = KeyStoreConfig.getInstance().getKeyStoreType();
 
-        if (this.serverKeyStore == null) {
-            FileInputStream in = null;
-            try {
-                KeyStore store = KeyStore.getInstance(keyStoreType);
-                in = new FileInputStream(keyStorePath);
-                store.load(in, keyStorePassword.toCharArray());
-                this.serverKeyStore = store;
-            } catch (IOException | CertificateException | NoSuchAlgorithmException
-                    | KeyStoreException e) {
-                throw new SecurityException("Error while reading keystore from the given path.", e);
-            } finally {
-                if (in != null) {
-                    try {
-                        in.close();
-                    } catch (IOException e) {
-                        throw new SecurityException("Error while reading keystore.", e);
-                    }
+        FileInputStream in = null;
+        try {
+            KeyStore store = KeyStore.getInstance(keyStoreType);
+            in = new FileInputStream(keyStorePath);
+            store.load(in, keyStorePassword.toCharArray());
+            return store;
+        } catch (IOException | CertificateException | NoSuchAlgorithmException
+                | KeyStoreException e) {
+            throw new SecurityException("Error while reading keystore from the given path.", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new SecurityException("Error while reading keystore.", e);
                 }
             }
         }
-        return this.serverKeyStore;
     }
 
+    /**
+     * Returns the credential used to sign SAML2 messages. The unwrapped private key and the certificate are cached
+     * per key alias until the key store is reloaded, so that signing does not access the key store.
+     *
+     * @return signing credential of the configured key alias
+     */
+    public X509Credential getSigningCredential() {
 
-    public X509Credential getX509Credential() {
+        return loadedKeyStore.getSigningCredential(KeyStoreConfig.getInstance().getKeyStoreAlias());
+    }
 
+    /**
+     * Returns the preloaded signing credential of the given key alias.
+     *
+     * @param alias key alias, which must be the default key alias or one of the configured signing key aliases
+     * @return signing credential of the given key alias
+     */
+    public X509Credential getSigningCredential(String alias) {
 
-        X509Credential credential;
-        java.security.cert.X509Certificate cert;
-        try {
-            cert = (java.security.cert.X509Certificate) serverKeyStore.getCertificate(
-                    KeyStoreConfig.getInstance().getKeyStoreAlias());
-        } catch (KeyStoreException e) {
-            throw new IdentityRuntimeException("Error while reading certificate from server keystore for alias " +
-                                               KeyStoreConfig.getInstance().getKeyStoreAlias() + ".");
-        }
-        credential = new X509CredentialImpl(cert);
-        return credential;
+        return loadedKeyStore.getSigningCredential(alias);
+    }
+
+    public X509Credential getX509Credential() {
+
+        return new X509CredentialImpl(loadedKeyStore.getCertificate(KeyStoreConfig.getInstance().getKeyStoreAlias()));
     }
 
     public PrivateKey getPrivateKey() {
 
-        String alias = KeyStoreConfig.getInstance().getKeyStoreAlias();
-        String keyStorePassword = KeyStoreConfig.getInstance().getKeyStorePassword();
-        try {
-            return (PrivateKey) serverKeyStore.getKey(alias, keyStorePassword.toCharArray());
-        } catch (UnrecoverableKeyException | NoSuchAlgorithmException | KeyStoreException e) {
-            throw new IdentityRuntimeException("Error occurred while loading the key for the given alias " + alias, e);
+        return loadedKeyStore.getPrivateKey(KeyStoreConfig.getInstance().getKeyStoreAlias());
+    }
+
+    /**
+     * A loaded key store and the signing credentials unwrapped from it.
+     */
+    private static class LoadedKeyStore {
+
+        private final KeyStore keyStore;
+        private final Map<String, X509Credential> signingCredentials;
+
+        private LoadedKeyStore(KeyStore keyStore) {
+
+            this.keyStore = keyStore;
+            Map<String, X509Credential> credentials = new HashMap<>();
+            addSigningCredential(credentials, KeyStoreConfig.getInstance().getKeyStoreAlias());
+            KeyStoreConfig.getInstance().getSigningKeyAliases().forEach(a -> addSigningCredential(credentials, a));
+            this.signingCredentials = Collections.unmodifiableMap(credentials);
+        }
+
+        private void addSigningCredential(Map<String, X509Credential> credentials, String alias) {
+
+            java.security.cert.X509Certificate certificate = getCertificate(alias);
+            PrivateKey privateKey = getPrivateKey(alias);
+            if (certificate == null || privateKey == null) {
+                throw new IdentityRuntimeException("Cannot find a private key entry in server keystore for alias " +
+                                                   alias + ".");
+            }
+            credentials.put(alias, new X509CredentialImpl(certificate, privateKey));
+        }
+
+        private X509Credential getSigningCredential(String alias) {
+
+            X509Credential credential = signingCredentials.get(alias);
+            if (credential == null) {
+                throw new IdentityRuntimeException("No signing key is configured for alias " + alias + ".");
+            }
+            return credential;
+        }
+
+        private java.security.cert.X509Certificate getCertificate(String alias) {
+
+            try {
+                return (java.security.cert.X509Certificate) keyStore.getCertificate(alias);
+            } catch (KeyStoreException e) {
+                throw new IdentityRuntimeException("Error while reading certificate from server keystore for alias " +
+                                                   alias + ".");
+            }
+        }
+
+        private PrivateKey getPrivateKey(String alias) {
+
+            String keyStorePassword = KeyStoreConfig.getInstance().getKeyStorePassword();
+            try {
+                return (PrivateKey) keyStore.getKey(alias, keyStorePassword.toCharArray());
+            } catch (UnrecoverableKeyException | NoSuchAlgorithmException | KeyStoreException e) {
+                throw new IdentityRuntimeException("Error occurred while loading the key for the given alias " +
+                                                   alias, e);
+            }
         }
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.auth.saml2.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the server key store file and reloads {@link KeyStoreManager} when it changes, so that a rotated signing
+ * key is picked up without restarting the server. Reloading happens on a daemon thread, off the request path.
+ */
+public class KeyStoreWatcher implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(KeyStoreWatcher.class);
+
+    private static volatile KeyStoreWatcher instance = new KeyStoreWatcher();
+
+    private WatchService watchService = null;
+    private Thread watcherThread = null;
+    private Path keyStoreFile = null;
+
+    private KeyStoreWatcher() {
+
+    }
+
+    public static KeyStoreWatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts watching the configured key store file. Does nothing if the watcher is already running.
+     */
+    public synchronized void start() {
+
+        if (watcherThread != null) {
+            return;
+        }
+        Path keyStorePath = Paths.get(KeyStoreConfig.getInstance().getKeyStoreLocation()).toAbsolutePath();
+        Path keyStoreDir = keyStorePath.getParent();
+        if (keyStoreDir == null) {
+            logger.warn("Cannot watch key store " + keyStorePath + " for changes.");
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // Watch the directory, since key stores are commonly replaced by moving a new file over the old one.
+            keyStoreDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                 StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("Error while registering a watch on key store directory " + keyStoreDir + ".", e);
+            closeWatchService();
+            return;
+        }
+        keyStoreFile = keyStorePath.getFileName();
+        watcherThread = new Thread(this, "saml2-keystore-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Watching key store " + keyStorePath + " for changes.");
+        }
+    }
+
+    /**
+     * Stops watching the key store file.
+     */
+    public synchronized void stop() {
+
+        if (watcherThread == null) {
+            return;
+        }
+        watcherThread.interrupt();
+        closeWatchService();
+        watcherThread = null;
+    }
+
+    @Override
+    public void run() {
+
+        WatchService service = watchService;
+        long reloadDelay = KeyStoreConfig.getInstance().getKeyStoreReloadDelay();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                boolean changed = isKeyStoreChanged(key);
+                // A key store is usually written in several chunks. Wait until the events settle before reloading
+                // so that a partially written file is not read.
+                while (changed && (key = service.poll(reloadDelay, TimeUnit.MILLISECONDS)) != null) {
+                    isKeyStoreChanged(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Key store watch service closed.");
+            }
+        }
+    }
+
+    private boolean isKeyStoreChanged(WatchKey key) {
+
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || keyStoreFile.equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+
+        try {
+            KeyStoreManager.getInstance().reloadKeyStore();
+            logger.info("Reloaded key store " + KeyStoreConfig.getInstance().getKeyStoreLocation() + ".");
+        } catch (RuntimeException e) {
+            // Keep serving with the previously loaded key store.
+            logger.error("Error while reloading key store " + KeyStoreConfig.getInstance().getKeyStoreLocation() +
+                         ".", e);
+        }
+    }
+
+    private void closeWatchService() {
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.error("Error while closing the key store watch service.", e);
+            }
+            watchService = null;
+        }
+    }
+}
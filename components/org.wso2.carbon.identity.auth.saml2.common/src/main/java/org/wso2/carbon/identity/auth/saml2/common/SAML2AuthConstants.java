@@ -73,6 +73,11 @@ public class SAML2AuthConstants {
             public static final String AUTHN_RESPONSE_ENCRYPTED = "AssertionEncrypted";
             public static final String SIGNATURE_ALGO = "SignatureAlgo";
             public static final String DIGEST_ALGO = "DigestAlgo";
+            public static final String SIGNING_KEY_ALIAS = "SigningKeyAlias";
+            public static final String ENCRYPTION_KEY_REUSE = "EncryptionKeyReuse";
+            public static final String ASSERTION_ENCRYPTION_ALGO = "AssertionEncryptionAlgo";
+            public static final String KEY_ENCRYPTION_ALGO = "KeyEncryptionAlgo";
+            public static final String RESPONSE_STREAMING = "ResponseStreaming";
             public static final String IDP_INIT_SSO_ENABLED = "IdPInitSSOEnabled";
         }
 
@@ -150,6 +155,24 @@ public class SAML2AuthConstants {
             public static final String SHA512 = "http://www.w3.org/2001/04/xmlenc#sha512";
         }
 
+        /**
+         * Data encryption algorithm URIs.
+         */
+        public static class EncryptionAlgorithmURI {
+            public static final String AES128_CBC = "http://www.w3.org/2001/04/xmlenc#aes128-cbc";
+            public static final String AES256_CBC = "http://www.w3.org/2001/04/xmlenc#aes256-cbc";
+            public static final String AES128_GCM = "http://www.w3.org/2009/xmlenc11#aes128-gcm";
+            public static final String AES256_GCM = "http://www.w3.org/2009/xmlenc11#aes256-gcm";
+        }
+
+        /**
+         * Key transport algorithm URIs.
+         */
+        public static class KeyTransportAlgorithmURI {
+            public static final String RSA_1_5 = "http://www.w3.org/2001/04/xmlenc#rsa-1_5";
+            public static final String RSA_OAEP_MGF1P = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+        }
+
         /**
          * Canonicalization Algorithm URIs.
          */
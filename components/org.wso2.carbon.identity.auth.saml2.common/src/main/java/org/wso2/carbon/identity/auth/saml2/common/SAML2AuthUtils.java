@@ -23,22 +23,15 @@ import org.apache.commons.lang.StringUtils;
 import org.opensaml.common.impl.SAMLObjectContentReference;
 import org.opensaml.common.impl.SecureRandomIdentifierGenerator;
 import org.opensaml.saml2.core.RequestAbstractType;
-import org.opensaml.xml.Configuration;
 import org.opensaml.xml.XMLObject;
-import org.opensaml.xml.XMLObjectBuilder;
 import org.opensaml.xml.io.Marshaller;
-import org.opensaml.xml.io.MarshallerFactory;
 import org.opensaml.xml.io.MarshallingException;
 import org.opensaml.xml.io.Unmarshaller;
-import org.opensaml.xml.io.UnmarshallerFactory;
 import org.opensaml.xml.io.UnmarshallingException;
-import org.opensaml.xml.security.SigningUtil;
 import org.opensaml.xml.security.x509.X509Credential;
 import org.opensaml.xml.signature.KeyInfo;
 import org.opensaml.xml.signature.SignableXMLObject;
 import org.opensaml.xml.signature.Signature;
-import org.opensaml.xml.signature.SignatureException;
-import org.opensaml.xml.signature.Signer;
 import org.opensaml.xml.signature.X509Data;
 import org.opensaml.xml.util.Base64;
 import org.opensaml.xml.util.XMLHelper;
@@ -56,22 +49,23 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
@@ -86,6 +80,15 @@ public class SAML2AuthUtils {
     private static final String SECURITY_MANAGER_PROPERTY = Constants.XERCES_PROPERTY_PREFIX +
                                                             Constants.SECURITY_MANAGER_PROPERTY;
     private static final int ENTITY_EXPANSION_LIMIT = 0;
+    private static final CarbonEntityResolver ENTITY_RESOLVER = new CarbonEntityResolver();
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<>();
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final int INFLATE_BUFFER_SIZE = 1024;
+    private static final int MARSHALL_BUFFER_SIZE = 8192;
+    private static final ThreadLocal<LSSerializer> LS_SERIALIZER = new ThreadLocal<>();
+    private static final ThreadLocal<LSOutput> LS_OUTPUT = new ThreadLocal<>();
+    private static final ThreadLocal<SecureRandomIdentifierGenerator> ID_GENERATOR = new ThreadLocal<>();
+    private static volatile DOMImplementationLS domImplementationLS;
 
     private SAML2AuthUtils() {
 
@@ -100,12 +103,18 @@ public class SAML2AuthUtils {
      */
     public static String createID() {
 
-        try {
-            SecureRandomIdentifierGenerator generator = new SecureRandomIdentifierGenerator();
-            return generator.generateIdentifier();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IdentityRuntimeException("Error while building Secure Random ID", e);
+        // Each thread seeds and uses its own generator, so that threads neither seed a new SecureRandom per ID nor
+        // contend on a shared one.
+        SecureRandomIdentifierGenerator generator = ID_GENERATOR.get();
+        if (generator == null) {
+            try {
+                generator = new SecureRandomIdentifierGenerator();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IdentityRuntimeException("Error while building Secure Random ID", e);
+            }
+            ID_GENERATOR.set(generator);
         }
+        return generator.generateIdentifier();
     }
 
     public static void setSignature(SignableXMLObject request, String signatureAlgorithm,
@@ -115,9 +124,6 @@ public class SAML2AuthUtils {
         if (request == null) {
             throw new IllegalArgumentException("Request cannot be null.");
         }
-        if (StringUtils.isBlank(signatureAlgorithm)) {
-            throw new IllegalArgumentException("Signature algorithm cannot be blank.");
-        }
         if (x509Credential == null) {
             throw new IllegalArgumentException("X509Credential cannot be null.");
         }
@@ -127,6 +133,10 @@ public class SAML2AuthUtils {
         if (x509Credential.getPrivateKey() == null) {
             throw new IdentityRuntimeException("Private Key cannot be null.");
         }
+        if (StringUtils.isBlank(signatureAlgorithm)) {
+            signatureAlgorithm = SignatureAlgorithms.getDefaultAlgorithmURI(x509Credential.getPrivateKey());
+        }
+        SignatureAlgorithms.checkKey(x509Credential.getPrivateKey(), signatureAlgorithm);
 
         Signature signature = (Signature) buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
         signature.setSigningCredential(x509Credential);
@@ -156,22 +166,14 @@ public class SAML2AuthUtils {
         ((SAMLObjectContentReference) signature.getContentReferences().get(0))
                 .setDigestAlgorithm(digestAlgorithm);
 
-        List<Signature> signatureList = new ArrayList<Signature>();
-        signatureList.add(signature);
-
-        MarshallerFactory marshallerFactory = org.opensaml.xml.Configuration.getMarshallerFactory();
-        Marshaller marshaller = marshallerFactory.getMarshaller(request);
+        Marshaller marshaller = XMLObjectProviders.getMarshaller(request);
         try {
             marshaller.marshall(request);
         } catch (MarshallingException e) {
             throw new IdentityRuntimeException("Error while marshalling the SAML2 message for signing", e);
         }
 
-        try {
-            Signer.signObjects(signatureList);
-        } catch (SignatureException e) {
-            throw new IdentityRuntimeException("Error while signing the SAML2 message", e);
-        }
+        SigningService.getInstance().sign(signature);
     }
 
     public static void addSignatureToHTTPQueryString(StringBuilder httpQueryString, String signatureAlgorithmURI,
@@ -189,6 +191,10 @@ public class SAML2AuthUtils {
         if (x509Credential.getPrivateKey() == null) {
             throw new IdentityRuntimeException("Private Key cannot be null.");
         }
+        if (StringUtils.isBlank(signatureAlgorithmURI)) {
+            signatureAlgorithmURI = SignatureAlgorithms.getDefaultAlgorithmURI(x509Credential.getPrivateKey());
+        }
+        SignatureAlgorithms.checkKey(x509Credential.getPrivateKey(), signatureAlgorithmURI);
 
         try {
             if (httpQueryString.charAt(httpQueryString.length() - 1) != '&') {
@@ -197,9 +203,8 @@ public class SAML2AuthUtils {
             httpQueryString.append("SigAlg=");
             httpQueryString.append(URLEncoder.encode(signatureAlgorithmURI, StandardCharsets.UTF_8.name()).trim());
 
-            byte[] rawSignature = SigningUtil.signWithURI(x509Credential, signatureAlgorithmURI,
-                                                          httpQueryString.toString().getBytes(
-                                                                  StandardCharsets.UTF_8.name()));
+            byte[] rawSignature = sign(x509Credential.getPrivateKey(), signatureAlgorithmURI,
+                                       httpQueryString.toString().getBytes(StandardCharsets.UTF_8.name()));
 
             String base64Signature = Base64.encodeBytes(rawSignature, Base64.DONT_BREAK_LINES);
 
@@ -210,26 +215,92 @@ public class SAML2AuthUtils {
             httpQueryString.append("&Signature=" + URLEncoder.encode(base64Signature, StandardCharsets.UTF_8.name())
                     .trim());
 
-        } catch (org.opensaml.xml.security.SecurityException e) {
-            throw new IdentityRuntimeException("Unable to sign query string", e);
         } catch (UnsupportedEncodingException e) {
             throw new IdentityRuntimeException("Unsupported encoding algorithm. UTF-8 encoding is required to " +
                                                "be supported by all JVMs", e);
         }
     }
 
-    public static XMLObject buildXMLObject(QName objectQName) throws IdentityRuntimeException {
+    /**
+     * Computes a raw signature of the given content, as used by the HTTP-Redirect binding. The signature is computed
+     * with the JCA provider preferred in {@link CryptoConfig}, if any.
+     *
+     * @param privateKey   signing key
+     * @param algorithmURI XML Signature algorithm URI
+     * @param content      content to sign
+     * @return raw signature
+     * @throws IdentityRuntimeException if the content cannot be signed
+     */
+    public static byte[] sign(PrivateKey privateKey, String algorithmURI, byte[] content)
+            throws IdentityRuntimeException {
+
+        SignatureAlgorithms.checkKey(privateKey, algorithmURI);
+        try {
+            java.security.Signature signature = getSignatureInstance(algorithmURI);
+            signature.initSign(privateKey);
+            signature.update(content);
+            return signature.sign();
+        } catch (InvalidKeyException | java.security.SignatureException e) {
+            throw new IdentityRuntimeException("Error while signing with algorithm " + algorithmURI, e);
+        }
+    }
 
-        XMLObjectBuilder builder = org.opensaml.xml.Configuration.getBuilderFactory().getBuilder(objectQName);
-        if (builder == null) {
-            throw new IdentityRuntimeException("Unable to retrieve builder for object QName " + objectQName);
+    /**
+     * Verifies a raw signature of the given content, as used by the HTTP-Redirect binding. The signature is verified
+     * with the JCA provider preferred in {@link CryptoConfig}, if any.
+     *
+     * @param publicKey    verification key
+     * @param algorithmURI XML Signature algorithm URI
+     * @param signature    raw signature
+     * @param content      signed content
+     * @return true if the signature is valid, false otherwise
+     * @throws IdentityRuntimeException if the algorithm or the key is not supported
+     */
+    public static boolean verify(PublicKey publicKey, String algorithmURI, byte[] signature, byte[] content)
+            throws IdentityRuntimeException {
+
+        SignatureAlgorithms.checkKey(publicKey, algorithmURI);
+        try {
+            java.security.Signature verifier = getSignatureInstance(algorithmURI);
+            verifier.initVerify(publicKey);
+            verifier.update(content);
+            return verifier.verify(signature);
+        } catch (InvalidKeyException e) {
+            throw new IdentityRuntimeException("Error while verifying signature with algorithm " + algorithmURI, e);
+        } catch (java.security.SignatureException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Malformed signature with algorithm " + algorithmURI, e);
+            }
+            return false;
+        }
+    }
+
+    private static java.security.Signature getSignatureInstance(String algorithmURI) {
+
+        String jcaAlgorithm = SignatureAlgorithms.getJCAAlgorithm(algorithmURI);
+        if (jcaAlgorithm == null) {
+            throw new IdentityRuntimeException("Unsupported signature algorithm " + algorithmURI);
+        }
+        String provider = CryptoConfig.getInstance().getProviderName();
+        try {
+            if (StringUtils.isBlank(provider)) {
+                return java.security.Signature.getInstance(jcaAlgorithm);
+            }
+            return java.security.Signature.getInstance(jcaAlgorithm, provider);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new IdentityRuntimeException("Signature algorithm " + jcaAlgorithm + " is not available" +
+                                               (StringUtils.isBlank(provider) ? "" : " from provider " + provider), e);
         }
-        return builder.buildObject(objectQName.getNamespaceURI(), objectQName.getLocalPart(), objectQName.getPrefix());
+    }
+
+    public static XMLObject buildXMLObject(QName objectQName) throws IdentityRuntimeException {
+
+        return XMLObjectProviders.buildXMLObject(objectQName);
     }
 
     public static String encodeForRedirect(RequestAbstractType requestMessage)  {
 
-        Marshaller marshaller = Configuration.getMarshallerFactory().getMarshaller(requestMessage);
+        Marshaller marshaller = XMLObjectProviders.getMarshaller(requestMessage);
         Element authDOM = null;
         try {
             authDOM = marshaller.marshall(requestMessage);
@@ -269,53 +340,100 @@ public class SAML2AuthUtils {
     }
 
     public static String decodeForRedirect(String encodedStr) throws IdentityRuntimeException {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(" >> encoded string in the SSOUtils/decode : " + encodedStr);
+        }
         try {
+            String decodedString;
+            try {
+                decodedString = new String(readFully(openRedirectStream(encodedStr, true)), StandardCharsets.UTF_8);
+            } catch (ZipException e) {
+                // Not a raw DEFLATE stream. Retry assuming a ZLIB wrapped stream.
+                decodedString = new String(readFully(openRedirectStream(encodedStr, false)), StandardCharsets.UTF_8);
+            }
             if (logger.isDebugEnabled()) {
-                logger.debug(" >> encoded string in the SSOUtils/decode : " + encodedStr);
+                logger.debug("Request message " + decodedString);
             }
-            org.apache.commons.codec.binary.Base64 base64Decoder =
-                    new org.apache.commons.codec.binary.Base64();
-            byte[] xmlBytes = encodedStr.getBytes("UTF-8");
-            byte[] base64DecodedByteArray = base64Decoder.decode(xmlBytes);
+            return decodedString;
+        } catch (IOException e) {
+            throw new IdentityRuntimeException("Error when decoding the SAML Request.", e);
+        }
+    }
+
+    /**
+     * Decodes, inflates and unmarshalls a SAML2 message received over the HTTP-Redirect binding. The inflated XML is
+     * streamed directly into the parser without being materialized as a String.
+     *
+     * @param encodedStr URL decoded value of the SAML2 message parameter
+     * @return unmarshalled SAML2 message
+     * @throws IdentityRuntimeException if the message cannot be decoded or unmarshalled
+     */
+    public static XMLObject unmarshallForRedirect(String encodedStr) throws IdentityRuntimeException {
 
+        if (logger.isDebugEnabled()) {
+            // The message is only built as a String when it has to be logged.
+            return unmarshall(decodeForRedirect(encodedStr));
+        }
+        try {
             try {
-                //TODO if the request came in POST, inflating is wrong
-                Inflater inflater = new Inflater(true);
-                inflater.setInput(base64DecodedByteArray);
-                byte[] xmlMessageBytes = new byte[5000];
-                int resultLength = inflater.inflate(xmlMessageBytes);
-
-                if (!inflater.finished()) {
-                    throw new RuntimeException("End of the compressed data stream has NOT been reached");
-                }
+                return parseAndUnmarshall(openRedirectStream(encodedStr, true));
+            } catch (ZipException e) {
+                // Not a raw DEFLATE stream. Retry assuming a ZLIB wrapped stream.
+                return parseAndUnmarshall(openRedirectStream(encodedStr, false));
+            }
+        } catch (ParserConfigurationException | SAXException | UnmarshallingException | IOException e) {
+            throw new IdentityRuntimeException("Error in unmarshalling SAML Request from the encoded String", e);
+        }
+    }
 
-                inflater.end();
-                String decodedString = new String(xmlMessageBytes, 0, resultLength, "UTF-8");
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Request message " + decodedString);
-                }
-                return decodedString;
-
-            } catch (DataFormatException e) {
-                ByteArrayInputStream bais = new ByteArrayInputStream(base64DecodedByteArray);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                InflaterInputStream iis = new InflaterInputStream(bais);
-                byte[] buf = new byte[1024];
-                int count = iis.read(buf);
-                while (count != -1) {
-                    baos.write(buf, 0, count);
-                    count = iis.read(buf);
-                }
-                iis.close();
-                String decodedStr = new String(baos.toByteArray(), Charset.forName("UTF-8"));
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Request message " + decodedStr);
-                }
-                return decodedStr;
+    /**
+     * Decodes and unmarshalls a SAML2 message received over the HTTP-POST binding, streaming the Base64 decoded XML
+     * directly into the parser.
+     *
+     * @param encodedStr Base64 encoded SAML2 message
+     * @return unmarshalled SAML2 message
+     * @throws IdentityRuntimeException if the message cannot be decoded or unmarshalled
+     */
+    public static XMLObject unmarshallForPost(String encodedStr) throws IdentityRuntimeException {
+
+        if (logger.isDebugEnabled()) {
+            return unmarshall(decodeForPost(encodedStr));
+        }
+        try {
+            return parseAndUnmarshall(new Base64.InputStream(new ByteArrayInputStream(
+                    encodedStr.getBytes(StandardCharsets.UTF_8)), Base64.DECODE));
+        } catch (ParserConfigurationException | SAXException | UnmarshallingException | IOException e) {
+            throw new IdentityRuntimeException("Error in unmarshalling SAML2 message from the encoded String", e);
+        }
+    }
+
+    private static InputStream openRedirectStream(String encodedStr, boolean nowrap) {
+
+        InputStream base64DecodingStream = new Base64.InputStream(new ByteArrayInputStream(
+                encodedStr.getBytes(StandardCharsets.UTF_8)), Base64.DECODE);
+        if (!nowrap) {
+            return new InflaterInputStream(base64DecodingStream);
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        return new InflaterInputStream(base64DecodingStream, inflater, INFLATE_BUFFER_SIZE);
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buf = new byte[INFLATE_BUFFER_SIZE];
+        try {
+            int count = inputStream.read(buf);
+            while (count != -1) {
+                outputStream.write(buf, 0, count);
+                count = inputStream.read(buf);
             }
-        } catch (IOException e) {
-            throw new IdentityRuntimeException("Error when decoding the SAML Request.", e);
+        } finally {
+            inputStream.close();
         }
+        return outputStream.toByteArray();
     }
 
     public static String decodeForPost(String encodedStr) throws IdentityRuntimeException {
@@ -335,16 +453,9 @@ public class SAML2AuthUtils {
 
     public static String marshall(XMLObject xmlObject) {
         try {
-            MarshallerFactory marshallerFactory = org.opensaml.xml.Configuration.getMarshallerFactory();
-            Marshaller marshaller = marshallerFactory.getMarshaller(xmlObject);
-            Element element = marshaller.marshall(xmlObject);
-            ByteArrayOutputStream byteArrayOutputStrm = new ByteArrayOutputStream();
-            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-            DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-            LSSerializer writer = impl.createLSSerializer();
-            LSOutput output = impl.createLSOutput();
-            output.setByteStream(byteArrayOutputStrm);
-            writer.write(element, output);
+            Element element = getDOM(xmlObject);
+            ByteArrayOutputStream byteArrayOutputStrm = new ByteArrayOutputStream(MARSHALL_BUFFER_SIZE);
+            serialize(element, byteArrayOutputStrm, true);
             return byteArrayOutputStrm.toString(StandardCharsets.UTF_8.toString());
         } catch (InstantiationException | MarshallingException | IllegalAccessException |
                 UnsupportedEncodingException | ClassNotFoundException e) {
@@ -352,25 +463,118 @@ public class SAML2AuthUtils {
         }
     }
 
+    /**
+     * Marshalls the given XML object and Base64 encodes it for the HTTP-POST binding in a single pass. The DOM is
+     * serialized straight through a Base64 encoding stream, so the XML is never held as a String or as an
+     * intermediate byte array.
+     *
+     * @param xmlObject XML object to marshall and encode
+     * @return Base64 encoded XML object
+     */
+    public static String marshallAndEncodeForPost(XMLObject xmlObject) {
+        try {
+            Element element = getDOM(xmlObject);
+            ByteArrayOutputStream byteArrayOutputStrm = new ByteArrayOutputStream(MARSHALL_BUFFER_SIZE);
+            Base64.OutputStream base64OutputStream = new Base64.OutputStream(byteArrayOutputStrm,
+                                                                             Base64.ENCODE | Base64.DONT_BREAK_LINES);
+            serialize(element, base64OutputStream, true);
+            // closing the encoding stream writes the final, padded block
+            base64OutputStream.close();
+            return byteArrayOutputStrm.toString(StandardCharsets.US_ASCII.name());
+        } catch (InstantiationException | MarshallingException | IllegalAccessException | IOException |
+                ClassNotFoundException e) {
+            throw new IdentityRuntimeException("Error marshalling the XML object", e);
+        }
+    }
+
+    /**
+     * Marshalls the given XML object into the given stream as an XML fragment, i.e. without an XML declaration, so
+     * that it can be embedded in an enclosing document written by the caller.
+     *
+     * @param xmlObject    XML object to marshall
+     * @param outputStream stream to write the UTF-8 encoded XML to
+     */
+    public static void marshallFragment(XMLObject xmlObject, OutputStream outputStream) {
+        try {
+            serialize(getDOM(xmlObject), outputStream, false);
+        } catch (InstantiationException | MarshallingException | IllegalAccessException | ClassNotFoundException e) {
+            throw new IdentityRuntimeException("Error marshalling the XML object", e);
+        }
+    }
+
+    /**
+     * Returns the DOM of the given XML object. The DOM cached in the object is reused if there is one, e.g. because
+     * the object was marshalled to sign it, since OpenSAML drops the cached DOM whenever the object is modified.
+     *
+     * @param xmlObject XML object
+     * @return DOM element of the XML object
+     * @throws MarshallingException if the XML object cannot be marshalled
+     */
+    private static Element getDOM(XMLObject xmlObject) throws MarshallingException {
+
+        Element element = xmlObject.getDOM();
+        if (element != null) {
+            return element;
+        }
+        Marshaller marshaller = XMLObjectProviders.getMarshaller(xmlObject);
+        return marshaller.marshall(xmlObject);
+    }
+
+    /**
+     * Serializes the given DOM element into the given stream using the serializer confined to the calling thread.
+     *
+     * @param element        DOM element to serialize
+     * @param outputStream   stream to write the serialized element to
+     * @param xmlDeclaration whether to write an XML declaration before the element
+     */
+    private static void serialize(Element element, OutputStream outputStream, boolean xmlDeclaration)
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+        LSSerializer writer = LS_SERIALIZER.get();
+        LSOutput output = LS_OUTPUT.get();
+        if (writer == null) {
+            DOMImplementationLS impl = getDOMImplementationLS();
+            writer = impl.createLSSerializer();
+            output = impl.createLSOutput();
+            LS_SERIALIZER.set(writer);
+            LS_OUTPUT.set(output);
+        }
+        writer.getDomConfig().setParameter("xml-declaration", xmlDeclaration);
+        output.setByteStream(outputStream);
+        try {
+            writer.write(element, output);
+        } finally {
+            output.setByteStream(null);
+        }
+    }
+
+    /**
+     * Returns the DOM Load and Save implementation. The implementation is resolved through the
+     * {@link DOMImplementationRegistry} only once, as the registry performs a service lookup on every call.
+     *
+     * @return DOM Load and Save implementation
+     */
+    private static DOMImplementationLS getDOMImplementationLS()
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+        DOMImplementationLS impl = domImplementationLS;
+        if (impl == null) {
+            synchronized (SAML2AuthUtils.class) {
+                impl = domImplementationLS;
+                if (impl == null) {
+                    DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
+                    impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
+                    domImplementationLS = impl;
+                }
+            }
+        }
+        return impl;
+    }
+
     public static XMLObject unmarshall(String samlString) throws IdentityRuntimeException {
 
         try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setNamespaceAware(true);
-            documentBuilderFactory.setExpandEntityReferences(false);
-            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            org.apache.xerces.util.SecurityManager securityManager = new org.apache.xerces.util.SecurityManager();
-            securityManager.setEntityExpansionLimit(ENTITY_EXPANSION_LIMIT);
-            documentBuilderFactory.setAttribute(SECURITY_MANAGER_PROPERTY, securityManager);
-
-            DocumentBuilder docBuilder = documentBuilderFactory.newDocumentBuilder();
-            docBuilder.setEntityResolver(new CarbonEntityResolver());
-            ByteArrayInputStream is = new ByteArrayInputStream(samlString.getBytes(StandardCharsets.UTF_8));
-            Document document = docBuilder.parse(is);
-            Element element = document.getDocumentElement();
-            UnmarshallerFactory unmarshallerFactory = Configuration.getUnmarshallerFactory();
-            Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(element);
-            return unmarshaller.unmarshall(element);
+            return parseAndUnmarshall(new ByteArrayInputStream(samlString.getBytes(StandardCharsets.UTF_8)));
         } catch (ParserConfigurationException e) {
             throw new IdentityRuntimeException("Error in unmarshalling SAML Request from the encoded String", e);
         } catch (UnmarshallingException e) {
@@ -382,12 +586,100 @@ public class SAML2AuthUtils {
         }
     }
 
+    /**
+     * Unmarshalls a SAML2 message that has already been decoded into UTF-8 encoded XML.
+     *
+     * @param xml decoded XML of the SAML2 message
+     * @return unmarshalled SAML2 message
+     * @throws IdentityRuntimeException if the message cannot be unmarshalled
+     */
+    public static XMLObject unmarshall(byte[] xml) throws IdentityRuntimeException {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("SAML2 message " + new String(xml, StandardCharsets.UTF_8));
+        }
+        try {
+            return parseAndUnmarshall(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException | UnmarshallingException | IOException e) {
+            throw new IdentityRuntimeException("Error in unmarshalling the SAML2 message", e);
+        }
+    }
+
+    private static XMLObject parseAndUnmarshall(InputStream inputStream)
+            throws ParserConfigurationException, SAXException, IOException, UnmarshallingException {
+
+        DocumentBuilder docBuilder = getDocumentBuilder();
+        Document document = docBuilder.parse(inputStream);
+        Element element = document.getDocumentElement();
+        Unmarshaller unmarshaller = XMLObjectProviders.getUnmarshaller(element);
+        return unmarshaller.unmarshall(element);
+    }
+
+    /**
+     * Creates a new, empty DOM document.
+     *
+     * @return new document
+     */
+    public static Document newDocument() {
+
+        try {
+            return getDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IdentityRuntimeException("Error while creating a document builder", e);
+        }
+    }
+
+    /**
+     * Returns the secured {@link DocumentBuilder} confined to the calling thread. The builder is created once per
+     * thread and reset before each use, so that the factory lookup and security configuration is not repeated for
+     * every parsed message.
+     *
+     * @return secured document builder
+     * @throws ParserConfigurationException if the document builder cannot be created
+     */
+    private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+
+        DocumentBuilder docBuilder = DOCUMENT_BUILDER.get();
+        if (docBuilder == null) {
+            docBuilder = createDocumentBuilderFactory().newDocumentBuilder();
+            DOCUMENT_BUILDER.set(docBuilder);
+        } else {
+            docBuilder.reset();
+        }
+        // reset() restores the entity resolver the builder was created with, hence set it on every use
+        docBuilder.setEntityResolver(ENTITY_RESOLVER);
+        return docBuilder;
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() throws ParserConfigurationException {
+
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setExpandEntityReferences(false);
+        documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        org.apache.xerces.util.SecurityManager securityManager = new org.apache.xerces.util.SecurityManager();
+        securityManager.setEntityExpansionLimit(ENTITY_EXPANSION_LIMIT);
+        documentBuilderFactory.setAttribute(SECURITY_MANAGER_PROPERTY, securityManager);
+        return documentBuilderFactory;
+    }
+
     public static X509Credential getServerCredentials() {
 
-        PrivateKey privateKey = KeyStoreManager.getInstance().getPrivateKey();
-        X509Certificate certificate = KeyStoreManager.getInstance().getX509Credential().getEntityCertificate();
-        X509Credential credential = new X509CredentialImpl(certificate, privateKey);
-        return credential;
+        return KeyStoreManager.getInstance().getSigningCredential();
+    }
+
+    /**
+     * Returns the server credential of the given key alias, or the default server credential if the alias is blank.
+     *
+     * @param alias signing key alias
+     * @return server signing credential
+     */
+    public static X509Credential getServerCredentials(String alias) {
+
+        if (StringUtils.isBlank(alias)) {
+            return getServerCredentials();
+        }
+        return KeyStoreManager.getInstance().getSigningCredential(alias);
     }
 
     /**
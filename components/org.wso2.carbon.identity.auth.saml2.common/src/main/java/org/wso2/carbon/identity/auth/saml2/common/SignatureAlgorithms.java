@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.auth.saml2.common;
+
+import org.opensaml.xml.security.SecurityHelper;
+import org.wso2.carbon.identity.common.base.exception.IdentityRuntimeException;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mapping of XML Signature algorithm URIs to JCA signature algorithms and key types.
+ */
+public class SignatureAlgorithms {
+
+    private static final String RSA = "RSA";
+    private static final String DSA = "DSA";
+    private static final String EC = "EC";
+
+    private static final Map<String, String> JCA_ALGORITHMS;
+    private static final Map<String, String> KEY_ALGORITHMS;
+
+    static {
+        Map<String, String> jcaAlgorithms = new HashMap<>();
+        Map<String, String> keyAlgorithms = new HashMap<>();
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_MD5, "MD5withRSA", RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_RIPEMD160,
+            "RIPEMD160withRSA", RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA1, "SHA1withRSA", RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA256, "SHA256withRSA",
+            RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA384, "SHA384withRSA",
+            RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA512, "SHA512withRSA",
+            RSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.DSA_SHA1, "SHA1withDSA", DSA);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA1, "SHA1withECDSA",
+            EC);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256,
+            "SHA256withECDSA", EC);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA384,
+            "SHA384withECDSA", EC);
+        add(jcaAlgorithms, keyAlgorithms, SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA512,
+            "SHA512withECDSA", EC);
+        JCA_ALGORITHMS = Collections.unmodifiableMap(jcaAlgorithms);
+        KEY_ALGORITHMS = Collections.unmodifiableMap(keyAlgorithms);
+    }
+
+    private SignatureAlgorithms() {
+
+    }
+
+    private static void add(Map<String, String> jcaAlgorithms, Map<String, String> keyAlgorithms, String uri,
+                            String jcaAlgorithm, String keyAlgorithm) {
+        jcaAlgorithms.put(uri, jcaAlgorithm);
+        keyAlgorithms.put(uri, keyAlgorithm);
+    }
+
+    /**
+     * Returns the JCA signature algorithm of the given XML Signature algorithm URI. Algorithms not known here are
+     * looked up in the XML Security algorithm mapping.
+     *
+     * @param algorithmURI XML Signature algorithm URI
+     * @return JCA signature algorithm, or null if the algorithm is not supported
+     */
+    public static String getJCAAlgorithm(String algorithmURI) {
+
+        String jcaAlgorithm = JCA_ALGORITHMS.get(algorithmURI);
+        if (jcaAlgorithm == null) {
+            jcaAlgorithm = SecurityHelper.getAlgorithmIDFromURI(algorithmURI);
+        }
+        return jcaAlgorithm;
+    }
+
+    /**
+     * Returns whether the XML Security library used for XML signatures has a mapping for the given algorithm.
+     *
+     * @param algorithmURI XML Signature algorithm URI
+     * @return true if XML signatures can be verified with the algorithm through the XML Security library
+     */
+    public static boolean isSupportedByXMLSecurity(String algorithmURI) {
+        return SecurityHelper.getAlgorithmIDFromURI(algorithmURI) != null;
+    }
+
+    /**
+     * Returns the signature algorithm used with the given key when none is configured. RSA keys keep the historical
+     * default of RSA-SHA1.
+     *
+     * @param key signing key
+     * @return XML Signature algorithm URI
+     */
+    public static String getDefaultAlgorithmURI(Key key) {
+
+        if (EC.equals(key.getAlgorithm())) {
+            return SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256;
+        } else if (DSA.equals(key.getAlgorithm())) {
+            return SAML2AuthConstants.XML.SignatureAlgorithmURI.DSA_SHA1;
+        }
+        return SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA1;
+    }
+
+    /**
+     * Checks that the given key can be used with the given signature algorithm.
+     *
+     * @param key          signing or verification key
+     * @param algorithmURI XML Signature algorithm URI
+     * @throws IdentityRuntimeException if the key type does not match the algorithm
+     */
+    public static void checkKey(Key key, String algorithmURI) throws IdentityRuntimeException {
+
+        String keyAlgorithm = KEY_ALGORITHMS.get(algorithmURI);
+        if (keyAlgorithm != null && !keyAlgorithm.equals(key.getAlgorithm())) {
+            throw new IdentityRuntimeException("Signature algorithm " + algorithmURI + " requires an " +
+                                               keyAlgorithm + " key, but the key is an " + key.getAlgorithm() +
+                                               " key.");
+        }
+    }
+}
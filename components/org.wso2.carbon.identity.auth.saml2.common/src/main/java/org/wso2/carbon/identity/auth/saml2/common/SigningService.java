@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.auth.saml2.common;
+
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureException;
+import org.opensaml.xml.signature.Signer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.common.base.exception.IdentityRuntimeException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes XML signatures of marshalled SAML2 objects with bounded concurrency.
+ * <p/>
+ * When {@link CryptoConfig#isSigningLimitEnabled()} is set, at most {@link CryptoConfig#getSigningConcurrency()}
+ * signatures are computed at a time. A request signs on its own thread once it has a permit, and is rejected if it
+ * cannot get one within {@link CryptoConfig#getSigningPermitTimeout()}, so that a burst of signing requests fails fast
+ * instead of occupying every request thread with private key operations. The concurrency is read when the first
+ * signature is computed.
+ */
+public class SigningService {
+
+    private static Logger logger = LoggerFactory.getLogger(SigningService.class);
+
+    private static volatile SigningService instance = new SigningService();
+
+    private volatile Semaphore permits = null;
+
+    private final AtomicLong signedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalSignTime = new AtomicLong();
+    private final AtomicLong maxSignTime = new AtomicLong();
+
+    private SigningService() {
+
+    }
+
+    public static SigningService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Computes the given signature. The signature's parent object must have been marshalled.
+     *
+     * @param signature signature to compute
+     * @throws IdentityRuntimeException if signing fails, or if no signing permit is available in time
+     */
+    public void sign(Signature signature) throws IdentityRuntimeException {
+
+        if (!CryptoConfig.getInstance().isSigningLimitEnabled()) {
+            signNow(signature);
+            return;
+        }
+        Semaphore semaphore = getPermits();
+        try {
+            if (!semaphore.tryAcquire(CryptoConfig.getInstance().getSigningPermitTimeout(), TimeUnit.MILLISECONDS)) {
+                rejectedCount.incrementAndGet();
+                throw new IdentityRuntimeException("Too many concurrent signing requests. SAML2 message is not " +
+                                                   "signed.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityRuntimeException("Interrupted while waiting to sign the SAML2 message", e);
+        }
+        try {
+            signNow(signature);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private void signNow(Signature signature) {
+
+        long start = System.nanoTime();
+        try {
+            Signer.signObject(signature);
+        } catch (SignatureException e) {
+            throw new IdentityRuntimeException("Error while signing the SAML2 message", e);
+        }
+        long elapsed = System.nanoTime() - start;
+        signedCount.incrementAndGet();
+        totalSignTime.addAndGet(elapsed);
+        maxSignTime.accumulateAndGet(elapsed, Math::max);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Signed SAML2 message in " + TimeUnit.NANOSECONDS.toMicros(elapsed) + "us. " +
+                         getStatistics());
+        }
+    }
+
+    private Semaphore getPermits() {
+
+        if (permits == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(CryptoConfig.getInstance().getSigningConcurrency());
+                }
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Logs the signing statistics.
+     */
+    public void logStatistics() {
+
+        if (signedCount.get() > 0 || rejectedCount.get() > 0) {
+            logger.info("SAML2 signing statistics: " + getStatistics());
+        }
+    }
+
+    /**
+     * Returns the number of signing requests waiting for a permit.
+     *
+     * @return number of waiting signing requests
+     */
+    public int getQueueDepth() {
+
+        Semaphore semaphore = permits;
+        return semaphore == null ? 0 : semaphore.getQueueLength();
+    }
+
+    public long getSignedCount() {
+        return signedCount.get();
+    }
+
+    /**
+     * Returns the number of signing requests rejected because no permit became available in time.
+     *
+     * @return number of rejected signing requests
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the mean time taken to compute a signature, excluding the time spent waiting for a permit.
+     *
+     * @return mean sign latency in nanoseconds
+     */
+    public long getAverageSignTime() {
+
+        long count = signedCount.get();
+        return count == 0 ? 0 : totalSignTime.get() / count;
+    }
+
+    /**
+     * Returns the longest time taken to compute a signature, excluding the time spent waiting for a permit.
+     *
+     * @return max sign latency in nanoseconds
+     */
+    public long getMaxSignTime() {
+        return maxSignTime.get();
+    }
+
+    private String getStatistics() {
+
+        return "signed=" + getSignedCount() + ", rejected=" + getRejectedCount() + ", queueDepth=" +
+               getQueueDepth() + ", meanSignTime=" + TimeUnit.NANOSECONDS.toMicros(getAverageSignTime()) +
+               "us, maxSignTime=" + TimeUnit.NANOSECONDS.toMicros(getMaxSignTime()) + "us";
+    }
+}
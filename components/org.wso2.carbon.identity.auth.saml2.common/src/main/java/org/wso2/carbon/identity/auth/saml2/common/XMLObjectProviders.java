@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.auth.saml2.common;
+
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.opensaml.xml.io.Marshaller;
+import org.opensaml.xml.io.Unmarshaller;
+import org.opensaml.xml.util.XMLHelper;
+import org.w3c.dom.Element;
+import org.wso2.carbon.identity.common.base.exception.IdentityRuntimeException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.namespace.QName;
+
+/**
+ * Caches the OpenSAML builders, marshallers and unmarshallers by QName. The providers are stateless and registered
+ * once when OpenSAML is bootstrapped, so each one is resolved from the OpenSAML configuration the first time it is
+ * needed and reused from then on. Providers that are not found are not cached, so a lookup made before the library
+ * is bootstrapped does not hide the providers registered later.
+ */
+public class XMLObjectProviders {
+
+    private static final Map<QName, XMLObjectBuilder> BUILDERS = new ConcurrentHashMap<>();
+    private static final Map<QName, Marshaller> MARSHALLERS = new ConcurrentHashMap<>();
+    private static final Map<QName, Unmarshaller> UNMARSHALLERS = new ConcurrentHashMap<>();
+
+    private XMLObjectProviders() {
+
+    }
+
+    /**
+     * Returns the builder registered for the given element or schema type.
+     *
+     * @param objectQName element or schema type QName
+     * @return builder
+     * @throws IdentityRuntimeException if there is no builder registered for the QName
+     */
+    public static XMLObjectBuilder getBuilder(QName objectQName) throws IdentityRuntimeException {
+
+        XMLObjectBuilder builder = BUILDERS.get(objectQName);
+        if (builder == null) {
+            builder = Configuration.getBuilderFactory().getBuilder(objectQName);
+            if (builder == null) {
+                throw new IdentityRuntimeException("Unable to retrieve builder for object QName " + objectQName);
+            }
+            BUILDERS.put(objectQName, builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Builds an XML object with the given element QName.
+     *
+     * @param objectQName element QName
+     * @return new XML object
+     * @throws IdentityRuntimeException if there is no builder registered for the QName
+     */
+    public static XMLObject buildXMLObject(QName objectQName) throws IdentityRuntimeException {
+
+        return getBuilder(objectQName).buildObject(objectQName.getNamespaceURI(), objectQName.getLocalPart(),
+                                                   objectQName.getPrefix());
+    }
+
+    /**
+     * Returns the marshaller for the given XML object. As in OpenSAML, a marshaller registered for the schema type
+     * of the object takes precedence over one registered for its element QName.
+     *
+     * @param xmlObject XML object to marshall
+     * @return marshaller
+     * @throws IdentityRuntimeException if there is no marshaller for the object
+     */
+    public static Marshaller getMarshaller(XMLObject xmlObject) throws IdentityRuntimeException {
+
+        Marshaller marshaller = null;
+        if (xmlObject.getSchemaType() != null) {
+            marshaller = getMarshaller(xmlObject.getSchemaType());
+        }
+        if (marshaller == null) {
+            marshaller = getMarshaller(xmlObject.getElementQName());
+        }
+        if (marshaller == null) {
+            marshaller = Configuration.getMarshallerFactory().getMarshaller(xmlObject);
+            if (marshaller == null) {
+                throw new IdentityRuntimeException("Unable to retrieve marshaller for " +
+                                                   xmlObject.getElementQName());
+            }
+        }
+        return marshaller;
+    }
+
+    /**
+     * Returns the unmarshaller for the given DOM element. As in OpenSAML, an unmarshaller registered for the
+     * xsi:type of the element takes precedence over one registered for its element QName.
+     *
+     * @param element DOM element to unmarshall
+     * @return unmarshaller
+     * @throws IdentityRuntimeException if there is no unmarshaller for the element
+     */
+    public static Unmarshaller getUnmarshaller(Element element) throws IdentityRuntimeException {
+
+        Unmarshaller unmarshaller = null;
+        QName schemaType = XMLHelper.getXSIType(element);
+        if (schemaType != null) {
+            unmarshaller = getUnmarshaller(schemaType);
+        }
+        if (unmarshaller == null) {
+            unmarshaller = getUnmarshaller(XMLHelper.getNodeQName(element));
+        }
+        if (unmarshaller == null) {
+            unmarshaller = Configuration.getUnmarshallerFactory().getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw new IdentityRuntimeException("Unable to retrieve unmarshaller for " +
+                                                   XMLHelper.getNodeQName(element));
+            }
+        }
+        return unmarshaller;
+    }
+
+    private static Marshaller getMarshaller(QName key) {
+
+        Marshaller marshaller = MARSHALLERS.get(key);
+        if (marshaller == null) {
+            marshaller = Configuration.getMarshallerFactory().getMarshaller(key);
+            if (marshaller != null) {
+                MARSHALLERS.put(key, marshaller);
+            }
+        }
+        return marshaller;
+    }
+
+    private static Unmarshaller getUnmarshaller(QName key) {
+
+        Unmarshaller unmarshaller = UNMARSHALLERS.get(key);
+        if (unmarshaller == null) {
+            unmarshaller = Configuration.getUnmarshallerFactory().getUnmarshaller(key);
+            if (unmarshaller != null) {
+                UNMARSHALLERS.put(key, unmarshaller);
+            }
+        }
+        return unmarshaller;
+    }
+}
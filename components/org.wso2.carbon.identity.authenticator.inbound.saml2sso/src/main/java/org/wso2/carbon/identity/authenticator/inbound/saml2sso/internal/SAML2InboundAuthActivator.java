@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.identity.authenticator.inbound.saml2sso.internal;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.xml.security.algorithms.JCEMapper;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.opensaml.DefaultBootstrap;
 import org.opensaml.xml.ConfigurationException;
@@ -25,11 +27,17 @@ import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.auth.saml2.common.CryptoConfig;
+import org.wso2.carbon.identity.auth.saml2.common.KeyStoreConfig;
+import org.wso2.carbon.identity.auth.saml2.common.KeyStoreWatcher;
+import org.wso2.carbon.identity.auth.saml2.common.SigningService;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay.ReplayCache;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.request.SAML2SSORequestBuilderFactory;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.response.SAML2SSOResponseBuilderFactory;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.response.SAML2SSOResponseHandler;
@@ -60,9 +68,17 @@ public class SAML2InboundAuthActivator implements BundleActivator {
             try {
                 DefaultBootstrap.bootstrap();
                 Security.addProvider(new BouncyCastleProvider());
+                String providerName = CryptoConfig.getInstance().getProviderName();
+                if (StringUtils.isNotBlank(providerName)) {
+                    // XML signing, XML signature verification and XML encryption use this provider.
+                    JCEMapper.setProviderId(providerName);
+                }
             } catch (ConfigurationException e) {
                 logger.error("Error in bootstrapping the OpenSAML2 library.", e);
             }
+            if (KeyStoreConfig.getInstance().isKeyStoreReloadEnabled()) {
+                KeyStoreWatcher.getInstance().start();
+            }
             bundleContext.registerService(GatewayRequestBuilderFactory.class, new SAML2SSORequestBuilderFactory(),
                                           null);
             bundleContext.registerService(GatewayResponseBuilderFactory.class, new SAML2SSOResponseBuilderFactory(),
@@ -75,7 +91,10 @@ public class SAML2InboundAuthActivator implements BundleActivator {
         }
     }
 
+    @Deactivate
     public void stop(BundleContext bundleContext) throws Exception {
+        KeyStoreWatcher.getInstance().stop();
+        SigningService.getInstance().logStatistics();
     }
 
     @Reference(
@@ -102,4 +121,29 @@ public class SAML2InboundAuthActivator implements BundleActivator {
             logger.debug("Unbinding GatewayClaimResolverService");
         }
     }
+
+    @Reference(
+            name = "saml2sso.replay.cache",
+            service = ReplayCache.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unSetReplayCache"
+    )
+    protected void setReplayCache(ReplayCache replayCache) {
+
+        SAML2InboundAuthDataHolder.getInstance().setReplayCache(replayCache);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Binding ReplayCache " + replayCache.getClass().getName());
+        }
+    }
+
+    protected void unSetReplayCache(ReplayCache replayCache) {
+
+        SAML2InboundAuthDataHolder.getInstance().setReplayCache(null);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Unbinding ReplayCache " + replayCache.getClass().getName());
+        }
+    }
 }
@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.identity.authenticator.inbound.saml2sso.internal;
 
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay.InMemoryReplayCache;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay.ReplayCache;
 import org.wso2.carbon.identity.gateway.service.GatewayClaimResolverService;
 
 /**
@@ -27,6 +29,7 @@ public class SAML2InboundAuthDataHolder {
 
     private static volatile SAML2InboundAuthDataHolder instance = new SAML2InboundAuthDataHolder();
     private GatewayClaimResolverService gatewayClaimResolverService = null;
+    private volatile ReplayCache replayCache = null;
 
     private SAML2InboundAuthDataHolder() {
 
@@ -43,4 +46,18 @@ public class SAML2InboundAuthDataHolder {
     public void setGatewayClaimResolverService(GatewayClaimResolverService gatewayClaimResolverService) {
         this.gatewayClaimResolverService = gatewayClaimResolverService;
     }
+
+    /**
+     * Returns the replay cache registered as an OSGi service, or the in-memory replay cache if there is none.
+     *
+     * @return replay cache
+     */
+    public ReplayCache getReplayCache() {
+        ReplayCache replayCache = this.replayCache;
+        return replayCache != null ? replayCache : InMemoryReplayCache.getInstance();
+    }
+
+    public void setReplayCache(ReplayCache replayCache) {
+        this.replayCache = replayCache;
+    }
 }
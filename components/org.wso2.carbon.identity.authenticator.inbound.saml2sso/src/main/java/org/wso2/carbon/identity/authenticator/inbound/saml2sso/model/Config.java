@@ -21,9 +21,13 @@ package org.wso2.carbon.identity.authenticator.inbound.saml2sso.model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.internal.SAML2InboundAuthActivator;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.Utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Bean class that represents the SAML2 SSO Inbound Authenticator Configuration.
@@ -55,11 +59,25 @@ public class Config {
 
     private String idpEntityId = "localhost";
     private List<String> destinationUrls = new ArrayList<>();
+    private volatile Set<String> destinationUrlSet = Collections.emptySet();
     private String errorPageUrl = "https://localhost:2929/notifications";
+    private int certificateCacheSize = 1000;
+    private int serviceProviderConfigCacheSize = 1000;
+    private int encryptionKeyMaxUses = 1000;
+    private long encryptionKeyLifetime = 300000;
+    private boolean replayDetectionEnabled = true;
+    private int replayCacheSize = 100000;
+    private long replayWindow = 300000;
+    private int samlRequestMaxEncodedLength = 131072;
+    private int samlRequestMaxSize = 131072;
+    private int samlRequestMaxInflationRatio = 100;
+    private int samlRequestMaxDepth = 32;
+    private int samlRequestMaxElementCount = 1024;
 
 
     private Config() {
         this.destinationUrls.add("https://localhost:9292/gateway");
+        this.destinationUrlSet = normalizeURLs(destinationUrls);
         if (logger.isDebugEnabled()) {
             logger.debug(toString());
         }
@@ -70,11 +88,23 @@ public class Config {
     }
 
     public List<String> getDestinationUrls() {
-        return destinationUrls;
+        return Collections.unmodifiableList(destinationUrls);
     }
 
     public void setDestinationUrls(List<String> destinationUrls) {
         this.destinationUrls = destinationUrls;
+        this.destinationUrlSet = normalizeURLs(destinationUrls);
+    }
+
+    /**
+     * Checks whether the given URL is one of the destination URLs of the IdP. URLs are compared after normalizing
+     * them with {@link Utils#normalizeURL(String)}.
+     *
+     * @param destinationUrl destination URL
+     * @return whether the URL is a destination URL of the IdP
+     */
+    public boolean isValidDestinationUrl(String destinationUrl) {
+        return destinationUrlSet.contains(Utils.normalizeURL(destinationUrl));
     }
 
     public String getIdpEntityId() {
@@ -101,6 +131,109 @@ public class Config {
         this.errorPageUrl = errorPageUrl;
     }
 
+    public int getCertificateCacheSize() {
+        return certificateCacheSize;
+    }
+
+    public void setCertificateCacheSize(int certificateCacheSize) {
+        this.certificateCacheSize = certificateCacheSize;
+    }
+
+    public int getServiceProviderConfigCacheSize() {
+        return serviceProviderConfigCacheSize;
+    }
+
+    public void setServiceProviderConfigCacheSize(int serviceProviderConfigCacheSize) {
+        this.serviceProviderConfigCacheSize = serviceProviderConfigCacheSize;
+    }
+
+    public int getEncryptionKeyMaxUses() {
+        return encryptionKeyMaxUses;
+    }
+
+    public void setEncryptionKeyMaxUses(int encryptionKeyMaxUses) {
+        this.encryptionKeyMaxUses = encryptionKeyMaxUses;
+    }
+
+    public long getEncryptionKeyLifetime() {
+        return encryptionKeyLifetime;
+    }
+
+    public void setEncryptionKeyLifetime(long encryptionKeyLifetime) {
+        this.encryptionKeyLifetime = encryptionKeyLifetime;
+    }
+
+    public boolean isReplayDetectionEnabled() {
+        return replayDetectionEnabled;
+    }
+
+    public void setReplayDetectionEnabled(boolean replayDetectionEnabled) {
+        this.replayDetectionEnabled = replayDetectionEnabled;
+    }
+
+    public int getReplayCacheSize() {
+        return replayCacheSize;
+    }
+
+    public void setReplayCacheSize(int replayCacheSize) {
+        this.replayCacheSize = replayCacheSize;
+    }
+
+    public long getReplayWindow() {
+        return replayWindow;
+    }
+
+    public void setReplayWindow(long replayWindow) {
+        this.replayWindow = replayWindow;
+    }
+
+    public int getSamlRequestMaxEncodedLength() {
+        return samlRequestMaxEncodedLength;
+    }
+
+    public void setSamlRequestMaxEncodedLength(int samlRequestMaxEncodedLength) {
+        this.samlRequestMaxEncodedLength = samlRequestMaxEncodedLength;
+    }
+
+    public int getSamlRequestMaxSize() {
+        return samlRequestMaxSize;
+    }
+
+    public void setSamlRequestMaxSize(int samlRequestMaxSize) {
+        this.samlRequestMaxSize = samlRequestMaxSize;
+    }
+
+    public int getSamlRequestMaxInflationRatio() {
+        return samlRequestMaxInflationRatio;
+    }
+
+    public void setSamlRequestMaxInflationRatio(int samlRequestMaxInflationRatio) {
+        this.samlRequestMaxInflationRatio = samlRequestMaxInflationRatio;
+    }
+
+    public int getSamlRequestMaxDepth() {
+        return samlRequestMaxDepth;
+    }
+
+    public void setSamlRequestMaxDepth(int samlRequestMaxDepth) {
+        this.samlRequestMaxDepth = samlRequestMaxDepth;
+    }
+
+    public int getSamlRequestMaxElementCount() {
+        return samlRequestMaxElementCount;
+    }
+
+    public void setSamlRequestMaxElementCount(int samlRequestMaxElementCount) {
+        this.samlRequestMaxElementCount = samlRequestMaxElementCount;
+    }
+
+    private static Set<String> normalizeURLs(List<String> urls) {
+
+        Set<String> normalizedURLs = new HashSet<>();
+        urls.forEach(url -> normalizedURLs.add(Utils.normalizeURL(url)));
+        return Collections.unmodifiableSet(normalizedURLs);
+    }
+
 // Need to enable debug logging for inbound.saml2sso during tests to uncomment this
 //    @Override
 //    public String toString() {
@@ -19,71 +19,135 @@
 package org.wso2.carbon.identity.authenticator.inbound.saml2sso.model;
 
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.Utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * SAML2 SSO Request Validator Config Bean.
+ * <p/>
+ * The configuration properties are parsed once when the bean is created, and the bean is immutable. Use
+ * {@link #getConfig(String, org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig)} to reuse the
+ * bean of a service provider across requests until the service provider's configuration changes.
  */
 public class RequestValidatorConfig implements Serializable {
 
     private static final long serialVersionUID = 7248171091829064189L;
 
-    private org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig requestValidatorConfig;
+    private static final ServiceProviderConfigCache<RequestValidatorConfig> CONFIGS =
+            new ServiceProviderConfigCache<>();
+
+    private final String spEntityId;
+    private final String defaultAssertionConsumerUrl;
+    private final List<String> assertionConsumerUrlList;
+    private final Set<String> assertionConsumerUrlSet;
+    private final boolean requireSignatureValidation;
+    private final String signingCertificate;
+    private final boolean sendBackClaimsAlways;
+    private final String attributeConsumingServiceIndex;
+    private final boolean idPInitSSOEnabled;
 
     public RequestValidatorConfig(
             org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig requestValidatorConfig) {
-        this.requestValidatorConfig = requestValidatorConfig;
+
+        this(ServiceProviderConfigCache.snapshot(requestValidatorConfig.getProperties()));
+    }
+
+    private RequestValidatorConfig(Properties properties) {
+
+        this.spEntityId = (String) properties.get(SAML2AuthConstants.Config.Name.SP_ENTITY_ID);
+        this.defaultAssertionConsumerUrl = (String) properties.get(
+                SAML2AuthConstants.Config.Name.DEFAULT_ASSERTION_CONSUMER_URL);
+        List<String> assertionConsumerUrlStrings = new ArrayList();
+        List assertionConsumerUrls = (List) properties.get(SAML2AuthConstants.Config.Name.ASSERTION_CONSUMER_URLS);
+        if (assertionConsumerUrls != null) {
+            assertionConsumerUrls.stream().forEach(a -> assertionConsumerUrlStrings.add((String) a));
+        }
+        this.assertionConsumerUrlList = Collections.unmodifiableList(assertionConsumerUrlStrings);
+        Set<String> normalizedAssertionConsumerUrls = new HashSet<>();
+        assertionConsumerUrlStrings.forEach(a -> normalizedAssertionConsumerUrls.add(Utils.normalizeURL(a)));
+        this.assertionConsumerUrlSet = Collections.unmodifiableSet(normalizedAssertionConsumerUrls);
+        this.requireSignatureValidation = Boolean.parseBoolean(
+                (String) properties.get(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED));
+        this.signingCertificate = (String) properties.get(SAML2AuthConstants.Config.Name.SIGNING_CERTIFICATE);
+        this.sendBackClaimsAlways = Boolean.parseBoolean(
+                (String) properties.get(SAML2AuthConstants.Config.Name.SEND_CLAIMS_ALWAYS));
+        this.attributeConsumingServiceIndex = (String) properties.get(
+                SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
+        this.idPInitSSOEnabled = Boolean.parseBoolean(
+                (String) properties.get(SAML2AuthConstants.Config.Name.IDP_INIT_SSO_ENABLED));
+    }
+
+    /**
+     * Returns the request validator config of the given service provider. The config built for a service provider
+     * is reused until the service provider's properties object is replaced or {@link #invalidateAll()} is called.
+     *
+     * @param serviceProviderId      service provider id
+     * @param requestValidatorConfig request validator config of the service provider
+     * @return request validator config
+     */
+    public static RequestValidatorConfig getConfig(
+            String serviceProviderId,
+            org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig requestValidatorConfig) {
+
+        return CONFIGS.get(serviceProviderId, requestValidatorConfig.getProperties(), RequestValidatorConfig::new);
+    }
+
+    /**
+     * Removes the cached configs of all service providers. Must be called after a service provider's configuration
+     * properties are edited in place, since a cached config is only rebuilt when the properties object is replaced.
+     */
+    public static void invalidateAll() {
+        CONFIGS.invalidateAll();
     }
 
     public String getSPEntityId() {
-        return (String) this.requestValidatorConfig.getProperties().get
-                (SAML2AuthConstants.Config.Name.SP_ENTITY_ID);
+        return spEntityId;
     }
 
     public String getDefaultAssertionConsumerUrl() {
-        return (String) this.requestValidatorConfig.getProperties().get(
-                SAML2AuthConstants.Config.Name.DEFAULT_ASSERTION_CONSUMER_URL);
+        return defaultAssertionConsumerUrl;
     }
 
     public List<String> getAssertionConsumerUrlList() {
-        List<String> assertionConsumerUrlStrings = new ArrayList();
-        List assertionConsumerUrls = (List) this.requestValidatorConfig.getProperties().get
-                (SAML2AuthConstants.Config.Name.ASSERTION_CONSUMER_URLS);
-        if (assertionConsumerUrls == null || assertionConsumerUrls.isEmpty()) {
-            return assertionConsumerUrlStrings;
-        }
-        assertionConsumerUrls.stream().forEach(a -> assertionConsumerUrlStrings.add((String) a));
-        return assertionConsumerUrlStrings;
+        return assertionConsumerUrlList;
+    }
+
+    /**
+     * Checks whether the given URL is one of the registered assertion consumer URLs. URLs are compared after
+     * normalizing them with {@link Utils#normalizeURL(String)}.
+     *
+     * @param assertionConsumerUrl assertion consumer URL
+     * @return whether the URL is registered
+     */
+    public boolean isValidAssertionConsumerUrl(String assertionConsumerUrl) {
+        return assertionConsumerUrlSet.contains(Utils.normalizeURL(assertionConsumerUrl));
     }
 
     public boolean isRequireSignatureValidation() {
-        return Boolean.parseBoolean(
-                (String) this.requestValidatorConfig.getProperties().get(
-                        SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED));
+        return requireSignatureValidation;
     }
 
     public String getSigningCertificate() {
-        return (String) this.requestValidatorConfig.getProperties().get(
-                SAML2AuthConstants.Config.Name.SIGNING_CERTIFICATE);
+        return signingCertificate;
     }
 
     public boolean sendBackClaimsAlways() {
-        return Boolean
-                .parseBoolean((String) this.requestValidatorConfig.getProperties().get(
-                        SAML2AuthConstants.Config.Name.SEND_CLAIMS_ALWAYS));
+        return sendBackClaimsAlways;
     }
 
     public String getAttributeConsumingServiceIndex() {
-        return (String) this.requestValidatorConfig.getProperties().get(
-                SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
+        return attributeConsumingServiceIndex;
     }
 
     public boolean isIdPInitSSOEnabled() {
-        return Boolean.parseBoolean((String) this.requestValidatorConfig.getProperties().get(
-                SAML2AuthConstants.Config.Name.IDP_INIT_SSO_ENABLED));
+        return idPInitSSOEnabled;
     }
 
 // Need to enable debug logging for inbound.saml2sso during tests to uncomment this
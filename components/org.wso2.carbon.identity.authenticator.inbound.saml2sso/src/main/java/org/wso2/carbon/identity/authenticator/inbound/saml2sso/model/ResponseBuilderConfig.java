@@ -25,10 +25,16 @@ import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * SAML2 SSO Response Handler Config Bean.
+ * <p/>
+ * The configuration properties are parsed once when the bean is created, and the bean is immutable. Use
+ * {@link #getConfig(String, org.wso2.carbon.identity.gateway.common.model.sp.ResponseBuilderConfig)} to reuse the
+ * bean of a service provider across requests until the service provider's configuration changes.
  */
 public class ResponseBuilderConfig implements Serializable {
 
@@ -36,105 +42,194 @@ public class ResponseBuilderConfig implements Serializable {
 
     private static Logger logger = LoggerFactory.getLogger(ResponseBuilderConfig.class);
 
-    private org.wso2.carbon.identity.gateway.common.model.sp.ResponseBuilderConfig responseBuilderConfigs;
+    private static final ServiceProviderConfigCache<ResponseBuilderConfig> CONFIGS =
+            new ServiceProviderConfigCache<>();
+
+    private final String defaultAssertionConsumerUrl;
+    private final String nameIdFormat;
+    private final long notOnOrAfterPeriod;
+    private final boolean sendBackClaimsAlways;
+    private final String attributeConsumingServiceIndex;
+    private final List<String> requestedAudiences;
+    private final List<String> requestedRecipients;
+    private final String digestAlgorithmUri;
+    private final String signingAlgorithmUri;
+    private final String signingKeyAlias;
+    private final boolean signResponse;
+    private final boolean encryptAssertion;
+    private final String encryptionCertificate;
+    private final boolean encryptionKeyReuse;
+    private final String assertionEncryptionAlgorithmUri;
+    private final String keyEncryptionAlgorithmUri;
+    private final boolean streamResponse;
 
     public ResponseBuilderConfig(
             org.wso2.carbon.identity.gateway.common.model.sp.ResponseBuilderConfig responseBuilderConfigs) {
-        this.responseBuilderConfigs = responseBuilderConfigs;
+
+        this(ServiceProviderConfigCache.snapshot(responseBuilderConfigs.getProperties()));
     }
 
-    public String getDefaultAssertionConsumerUrl() {
-        return (String) responseBuilderConfigs.getProperties().get(
+    private ResponseBuilderConfig(Properties properties) {
+
+        this.defaultAssertionConsumerUrl = (String) properties.get(
                 SAML2AuthConstants.Config.Name.DEFAULT_ASSERTION_CONSUMER_URL);
+        this.nameIdFormat = getString(properties, SAML2AuthConstants.Config.Name.NAME_ID_FORMAT,
+                                      NameIdentifier.EMAIL);
+        this.notOnOrAfterPeriod = parseNotOnOrAfterPeriod(properties);
+        this.sendBackClaimsAlways = Boolean.parseBoolean((String) properties.get(
+                SAML2AuthConstants.Config.Name.SEND_CLAIMS_ALWAYS));
+        this.attributeConsumingServiceIndex = (String) properties.get(
+                SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
+        this.requestedAudiences = getStringList(properties, SAML2AuthConstants.Config.Name.REQUESTED_AUDIENCES);
+        this.requestedRecipients = getStringList(properties, SAML2AuthConstants.Config.Name.REQUESTED_RECIPIENTS);
+        this.digestAlgorithmUri = getString(properties, SAML2AuthConstants.Config.Name.DIGEST_ALGO,
+                                            SAML2AuthConstants.XML.DigestAlgorithmURI.SHA1);
+        this.signingAlgorithmUri = (String) properties.get(SAML2AuthConstants.Config.Name.SIGNATURE_ALGO);
+        this.signingKeyAlias = (String) properties.get(SAML2AuthConstants.Config.Name.SIGNING_KEY_ALIAS);
+        this.signResponse = Boolean.valueOf((String) properties.get(
+                SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED));
+        this.encryptAssertion = Boolean.parseBoolean((String) properties.get(
+                SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_ENCRYPTED));
+        this.encryptionCertificate = (String) properties.get(SAML2AuthConstants.Config.Name.ENCRYPTION_CERTIFICATE);
+        this.encryptionKeyReuse = Boolean.parseBoolean((String) properties.get(
+                SAML2AuthConstants.Config.Name.ENCRYPTION_KEY_REUSE));
+        this.assertionEncryptionAlgorithmUri = getString(properties,
+                SAML2AuthConstants.Config.Name.ASSERTION_ENCRYPTION_ALGO,
+                SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC);
+        this.keyEncryptionAlgorithmUri = getString(properties, SAML2AuthConstants.Config.Name.KEY_ENCRYPTION_ALGO,
+                SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5);
+        this.streamResponse = Boolean.parseBoolean((String) properties.get(
+                SAML2AuthConstants.Config.Name.RESPONSE_STREAMING));
     }
 
-    public String getNameIdFormat() {
-        String nameIdFormat = NameIdentifier.EMAIL;
-        Object nameIDFormatObj = responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.NAME_ID_FORMAT);
-        if (nameIDFormatObj != null) {
-            nameIdFormat = (String) nameIDFormatObj;
+    /**
+     * Returns the response builder config of the given service provider. The config built for a service provider is
+     * reused until the service provider's properties object is replaced or {@link #invalidateAll()} is called.
+     *
+     * @param serviceProviderId      service provider id
+     * @param responseBuilderConfigs response builder config of the service provider
+     * @return response builder config
+     */
+    public static ResponseBuilderConfig getConfig(
+            String serviceProviderId,
+            org.wso2.carbon.identity.gateway.common.model.sp.ResponseBuilderConfig responseBuilderConfigs) {
+
+        return CONFIGS.get(serviceProviderId, responseBuilderConfigs.getProperties(), ResponseBuilderConfig::new);
+    }
+
+    /**
+     * Removes the cached configs of all service providers. Must be called after a service provider's configuration
+     * properties are edited in place, since a cached config is only rebuilt when the properties object is replaced.
+     */
+    public static void invalidateAll() {
+        CONFIGS.invalidateAll();
+    }
+
+    private static String getString(Properties properties, String name, String defaultValue) {
+
+        Object value = properties.get(name);
+        if (value != null) {
+            return (String) value;
         }
-        return nameIdFormat;
+        return defaultValue;
     }
 
-    public long getNotOnOrAfterPeriod() {
+    private static List<String> getStringList(Properties properties, String name) {
+
+        List<String> stringList = new ArrayList();
+        List list = (List) properties.get(name);
+        if (list != null) {
+            list.stream().forEach(v -> stringList.add((String) v));
+        }
+        return Collections.unmodifiableList(stringList);
+    }
+
+    private static long parseNotOnOrAfterPeriod(Properties properties) {
         try {
-            return Long.parseLong((String) responseBuilderConfigs.getProperties().get(
-                    SAML2AuthConstants.Config.Name.NOT_ON_OR_AFTER_PERIOD));
+            return Long.parseLong((String) properties.get(SAML2AuthConstants.Config.Name.NOT_ON_OR_AFTER_PERIOD));
         } catch (NumberFormatException e) {
             logger.debug("Error while converting given configuration value to an integer", e);
             return 5L;
         }
     }
 
+    public String getDefaultAssertionConsumerUrl() {
+        return defaultAssertionConsumerUrl;
+    }
+
+    public String getNameIdFormat() {
+        return nameIdFormat;
+    }
+
+    public long getNotOnOrAfterPeriod() {
+        return notOnOrAfterPeriod;
+    }
+
     public boolean sendBackClaimsAlways() {
-        return Boolean.parseBoolean((String) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.SEND_CLAIMS_ALWAYS));
+        return sendBackClaimsAlways;
     }
 
     public String getAttributeConsumingServiceIndex() {
-        return (String) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
+        return attributeConsumingServiceIndex;
     }
 
     public List<String> getRequestedAudiences() {
-
-        List<String> requestedAudiencesStringList = new ArrayList();
-        List requestedAudiencesList = (List) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.REQUESTED_AUDIENCES);
-        if (requestedAudiencesList == null || requestedAudiencesList.isEmpty()) {
-            return requestedAudiencesStringList;
-        }
-        requestedAudiencesList.stream().forEach(v -> requestedAudiencesStringList.add((String) v));
-        return requestedAudiencesStringList;
+        return requestedAudiences;
     }
 
     public List<String> getRequestedRecipients() {
-
-        List<String> requestedRecipientStringList = new ArrayList();
-        List requestedRecipientList = (List) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.REQUESTED_RECIPIENTS);
-        if (requestedRecipientList == null || requestedRecipientList.isEmpty()) {
-            return requestedRecipientStringList;
-        }
-        requestedRecipientList.stream().forEach(v -> requestedRecipientStringList.add((String) v));
-        return requestedRecipientStringList;
+        return requestedRecipients;
     }
 
     public String getDigestAlgorithmUri() {
-        String digestAlgorithm = SAML2AuthConstants.XML.DigestAlgorithmURI.SHA1;
-        Object digestAlgorithmObj = responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.DIGEST_ALGO);
-        if (digestAlgorithmObj != null) {
-            digestAlgorithm = (String) digestAlgorithmObj;
-        }
-        return digestAlgorithm;
+        return digestAlgorithmUri;
     }
 
+    /**
+     * Returns the configured signature algorithm URI.
+     *
+     * @return signature algorithm URI, or null to use the default algorithm of the signing key's type
+     */
     public String getSigningAlgorithmUri() {
-        String signatureAlgorithm = SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA1;
-        Object signatureAlgorithmObj = responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.SIGNATURE_ALGO);
-        if (signatureAlgorithmObj != null) {
-            signatureAlgorithm = (String) signatureAlgorithmObj;
-        }
-        return signatureAlgorithm;
+        return signingAlgorithmUri;
+    }
+
+    public String getSigningKeyAlias() {
+        return signingKeyAlias;
     }
 
     public boolean signResponse() {
-        return Boolean.valueOf((String) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED));
+        return signResponse;
     }
 
     public boolean encryptAssertion() {
-        return Boolean.parseBoolean((String) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_ENCRYPTED));
+        return encryptAssertion;
     }
 
     public String getEncryptionCertificate() {
-        return (String) responseBuilderConfigs.getProperties().get(
-                SAML2AuthConstants.Config.Name.ENCRYPTION_CERTIFICATE);
+        return encryptionCertificate;
+    }
+
+    public boolean isEncryptionKeyReuse() {
+        return encryptionKeyReuse;
+    }
+
+    public String getAssertionEncryptionAlgorithmUri() {
+        return assertionEncryptionAlgorithmUri;
+    }
+
+    public String getKeyEncryptionAlgorithmUri() {
+        return keyEncryptionAlgorithmUri;
+    }
+
+    /**
+     * Returns whether an unsigned response should be written directly as a stream instead of being marshalled to
+     * DOM. This has no effect on signed responses.
+     *
+     * @return whether to stream the response
+     */
+    public boolean streamResponse() {
+        return streamResponse;
     }
 
 // Need to enable debug logging for inbound.saml2sso during tests to uncomment this
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of the config beans built from the configuration properties of each service provider.
+ * <p/>
+ * A cached bean is reused as long as the service provider's properties object is the one it was built from, so a
+ * replaced configuration is picked up by the next request. A configuration edited in place is not, and whoever edits
+ * it must call {@link #invalidateAll()}. The properties object is only weakly referenced, and the cache is bounded by
+ * {@link Config#getServiceProviderConfigCacheSize()}, so the entries of removed service providers do not accumulate.
+ *
+ * @param <T> type of the config bean
+ */
+class ServiceProviderConfigCache<T> {
+
+    private final Map<String, CacheEntry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the config bean of the given service provider, building it from a snapshot of the given properties if
+     * there is no valid cached bean.
+     *
+     * @param serviceProviderId service provider id, or null to build a bean without caching it
+     * @param properties        configuration properties of the service provider
+     * @param builder           builds a bean from a snapshot of the properties
+     * @return config bean
+     */
+    T get(String serviceProviderId, Properties properties, Function<Properties, T> builder) {
+
+        if (serviceProviderId == null) {
+            return builder.apply(snapshot(properties));
+        }
+        CacheEntry<T> entry = entries.get(serviceProviderId);
+        if (entry != null && entry.properties.get() == properties) {
+            return entry.config;
+        }
+        T config = builder.apply(snapshot(properties));
+        evictIfFull();
+        entries.put(serviceProviderId, new CacheEntry<>(properties, config));
+        return config;
+    }
+
+    void invalidateAll() {
+        entries.clear();
+    }
+
+    private void evictIfFull() {
+
+        int maxSize = Config.getInstance().getServiceProviderConfigCacheSize();
+        Iterator<CacheEntry<T>> iterator = entries.values().iterator();
+        while (entries.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Copies the given properties. List values are copied too, so that the snapshot does not change when a list of
+     * the service provider's configuration is edited in place.
+     *
+     * @param properties properties to copy
+     * @return copy of the properties
+     */
+    static Properties snapshot(Properties properties) {
+
+        Properties snapshot = new Properties();
+        properties.forEach((name, value) -> {
+            if (value instanceof List) {
+                snapshot.put(name, new ArrayList<>((List<?>) value));
+            } else {
+                snapshot.put(name, value);
+            }
+        });
+        return snapshot;
+    }
+
+    private static class CacheEntry<T> {
+
+        private final WeakReference<Properties> properties;
+        private final T config;
+
+        private CacheEntry(Properties properties, T config) {
+
+            this.properties = new WeakReference<>(properties);
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Replay cache that keeps the message IDs of this node in memory, keyed by issuer and message ID. An entry is kept
+ * until the message it records expires, and the cache is bounded by {@link Config#getReplayCacheSize()}.
+ * <p/>
+ * The entries are also kept ordered by expiry, so that each message that is recorded first removes the entries that
+ * have expired, starting from the oldest one and stopping at the first live one. An entry of a message that has not
+ * expired is never evicted, since its message could then be replayed. When the cache is full of such entries, new
+ * messages are not recorded and are rejected as if they had been replayed.
+ */
+public class InMemoryReplayCache implements ReplayCache {
+
+    private static Logger logger = LoggerFactory.getLogger(InMemoryReplayCache.class);
+
+    private static volatile InMemoryReplayCache instance = new InMemoryReplayCache();
+
+    private final Map<String, Long> messages = new ConcurrentHashMap<>();
+    private final NavigableSet<Expiry> expiries = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((Expiry expiry) -> expiry.time).thenComparing(expiry -> expiry.key));
+
+    private InMemoryReplayCache() {
+
+    }
+
+    public static InMemoryReplayCache getInstance() {
+        return instance;
+    }
+
+    @Override
+    public boolean isReplay(String issuer, String messageId) {
+
+        Long expiry = messages.get(getKey(issuer, messageId));
+        return expiry != null && expiry >= System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean add(String issuer, String messageId, long expiry) {
+
+        String key = getKey(issuer, messageId);
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+        int maxSize = Config.getInstance().getReplayCacheSize();
+        if (messages.size() >= maxSize && !messages.containsKey(key)) {
+            logger.error("Replay cache is full with " + maxSize + " unexpired messages. Rejecting message " +
+                         messageId + " from '" + issuer + "' since it cannot be recorded.");
+            return false;
+        }
+        Long previousExpiry = messages.putIfAbsent(key, expiry);
+        while (previousExpiry != null) {
+            if (previousExpiry >= now) {
+                return false;
+            }
+            // the recorded message has expired, so its entry can be taken over
+            if (messages.replace(key, previousExpiry, expiry)) {
+                break;
+            }
+            previousExpiry = messages.putIfAbsent(key, expiry);
+        }
+        expiries.add(new Expiry(key, expiry));
+        return true;
+    }
+
+    private void removeExpired(long now) {
+
+        Iterator<Expiry> iterator = expiries.iterator();
+        while (iterator.hasNext()) {
+            Expiry oldest = iterator.next();
+            if (oldest.time >= now) {
+                return;
+            }
+            iterator.remove();
+            // the entry may have been taken over by a later message with the same ID
+            messages.remove(oldest.key, oldest.time);
+        }
+    }
+
+    public void clear() {
+
+        messages.clear();
+        expiries.clear();
+    }
+
+    public int getSize() {
+        return messages.size();
+    }
+
+    private static String getKey(String issuer, String messageId) {
+        return issuer + '\n' + messageId;
+    }
+
+    private static class Expiry {
+
+        private final String key;
+        private final long time;
+
+        private Expiry(String key, long time) {
+
+            this.key = key;
+            this.time = time;
+        }
+    }
+}
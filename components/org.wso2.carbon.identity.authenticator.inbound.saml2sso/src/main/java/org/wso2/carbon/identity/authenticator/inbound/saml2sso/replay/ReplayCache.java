@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay;
+
+/**
+ * Store of the IDs of the signed SAML2 messages received from service providers, used to reject replayed messages.
+ * <p/>
+ * The default implementation keeps the IDs in memory. An implementation registered as an OSGi service replaces it,
+ * e.g. to share the IDs across the nodes of a cluster.
+ */
+public interface ReplayCache {
+
+    /**
+     * Checks whether a message has already been received. The check does not record the message.
+     *
+     * @param issuer    entity ID of the service provider that sent the message
+     * @param messageId ID of the message
+     * @return whether the message has already been received
+     */
+    boolean isReplay(String issuer, String messageId);
+
+    /**
+     * Records a message, unless it has already been received.
+     *
+     * @param issuer    entity ID of the service provider that sent the message
+     * @param messageId ID of the message
+     * @param expiry    time in milliseconds after which the message is no longer accepted and need not be kept
+     * @return true if the message was recorded, false if it had already been received or could not be recorded, in
+     * which case the message must be rejected
+     */
+    boolean add(String issuer, String messageId, long expiry);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.request;
+
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameIDType;
+import org.opensaml.saml2.core.RequestAbstractType;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.util.Base64;
+import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORuntimeException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Applies the size and structure limits of {@link Config} to a SAMLRequest parameter before it is parsed into a DOM.
+ * The parameter is decoded and inflated within the size limits, and the XML is scanned with a streaming parser that
+ * rejects DTDs and enforces the depth and element count limits. A payload that breaks a limit is rejected without
+ * building any object model, and the number of rejections is counted per reason. The same scan reads the fields
+ * needed to route the request into a {@link SAMLRequestSummary}.
+ */
+public class SAMLRequestGuard {
+
+    private static Logger logger = LoggerFactory.getLogger(SAMLRequestGuard.class);
+
+    private static volatile SAMLRequestGuard instance = new SAMLRequestGuard();
+
+    private static final int INFLATE_BUFFER_SIZE = 1024;
+    private static final ThreadLocal<Inflater> RAW_INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<Inflater> ZLIB_INFLATER = ThreadLocal.withInitial(() -> new Inflater(false));
+
+    private final XMLInputFactory inputFactory;
+    private final Map<Rejection, AtomicLong> rejectionCounts;
+
+    /**
+     * Reasons for rejecting a SAMLRequest.
+     */
+    public enum Rejection {
+        ENCODED_LENGTH,
+        INFLATED_SIZE,
+        INFLATION_RATIO,
+        MALFORMED,
+        DTD,
+        DEPTH,
+        ELEMENT_COUNT
+    }
+
+    private SAMLRequestGuard() {
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        Map<Rejection, AtomicLong> counts = new EnumMap<>(Rejection.class);
+        for (Rejection rejection : Rejection.values()) {
+            counts.put(rejection, new AtomicLong());
+        }
+        rejectionCounts = Collections.unmodifiableMap(counts);
+    }
+
+    public static SAMLRequestGuard getInstance() {
+        return instance;
+    }
+
+    /**
+     * Decodes the given SAMLRequest parameter and checks it against the configured limits.
+     *
+     * @param samlRequest value of the SAMLRequest parameter
+     * @param redirect    whether the request was received over the HTTP-Redirect binding, i.e. is deflated
+     * @return summary of the request, including its UTF-8 encoded XML
+     * @throws SAML2SSORuntimeException if the request breaks a limit or is malformed
+     */
+    public SAMLRequestSummary decode(String samlRequest, boolean redirect) throws SAML2SSORuntimeException {
+
+        Config config = Config.getInstance();
+        if (samlRequest == null || samlRequest.isEmpty()) {
+            throw reject(Rejection.MALFORMED, "SAMLRequest is empty.");
+        }
+        if (samlRequest.length() > config.getSamlRequestMaxEncodedLength()) {
+            throw reject(Rejection.ENCODED_LENGTH, "SAMLRequest is longer than " +
+                                                   config.getSamlRequestMaxEncodedLength() + " characters.");
+        }
+
+        // Base64.decode(String) silently gunzips a payload that starts with the GZIP magic bytes, without any bound on
+        // the output size, so the byte array variant is used instead
+        byte[] encoded = samlRequest.getBytes(StandardCharsets.US_ASCII);
+        byte[] decoded = Base64.decode(encoded, 0, encoded.length);
+        if (decoded == null || decoded.length == 0) {
+            throw reject(Rejection.MALFORMED, "SAMLRequest is not Base64 encoded.");
+        }
+        byte[] xml;
+        if (redirect) {
+            try {
+                xml = inflate(decoded, RAW_INFLATER.get());
+            } catch (DataFormatException e) {
+                // Not a raw DEFLATE stream. Retry assuming a ZLIB wrapped stream.
+                try {
+                    xml = inflate(decoded, ZLIB_INFLATER.get());
+                } catch (DataFormatException e1) {
+                    throw reject(Rejection.MALFORMED, "SAMLRequest is not DEFLATE encoded.");
+                }
+            }
+        } else {
+            xml = decoded;
+        }
+        if (xml.length > config.getSamlRequestMaxSize()) {
+            throw reject(Rejection.INFLATED_SIZE, "SAMLRequest is larger than " + config.getSamlRequestMaxSize() +
+                                                  " bytes.");
+        }
+
+        return scan(xml);
+    }
+
+    private byte[] inflate(byte[] deflated, Inflater inflater) throws DataFormatException {
+
+        Config config = Config.getInstance();
+        long maxSize = Math.min((long) config.getSamlRequestMaxSize(),
+                                (long) deflated.length * config.getSamlRequestMaxInflationRatio());
+        inflater.reset();
+        inflater.setInput(deflated);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(deflated.length * 4);
+        byte[] buffer = new byte[INFLATE_BUFFER_SIZE];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated DEFLATE stream");
+            }
+            if ((long) outputStream.size() + count > maxSize) {
+                if (maxSize < config.getSamlRequestMaxSize()) {
+                    throw reject(Rejection.INFLATION_RATIO, "SAMLRequest inflates more than " +
+                                                            config.getSamlRequestMaxInflationRatio() + " times.");
+                }
+                throw reject(Rejection.INFLATED_SIZE, "SAMLRequest inflates to more than " +
+                                                      config.getSamlRequestMaxSize() + " bytes.");
+            }
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private SAMLRequestSummary scan(byte[] xml) {
+
+        Config config = Config.getInstance();
+        int depth = 0;
+        int elementCount = 0;
+        String namespaceURI = null;
+        String localName = null;
+        String id = null;
+        String destination = null;
+        String assertionConsumerServiceURL = null;
+        String issuer = null;
+        String issuerSPProvidedId = null;
+        boolean issuerFound = false;
+        boolean signed = false;
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(xml));
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (++depth > config.getSamlRequestMaxDepth()) {
+                        throw reject(Rejection.DEPTH, "SAMLRequest is nested deeper than " +
+                                                      config.getSamlRequestMaxDepth() + " elements.");
+                    }
+                    if (++elementCount > config.getSamlRequestMaxElementCount()) {
+                        throw reject(Rejection.ELEMENT_COUNT, "SAMLRequest has more than " +
+                                                              config.getSamlRequestMaxElementCount() + " elements.");
+                    }
+                    if (depth == 1) {
+                        namespaceURI = reader.getNamespaceURI();
+                        localName = reader.getLocalName();
+                        id = getAttribute(reader, RequestAbstractType.ID_ATTRIB_NAME);
+                        destination = getAttribute(reader, RequestAbstractType.DESTINATION_ATTRIB_NAME);
+                        assertionConsumerServiceURL = getAttribute(reader,
+                                AuthnRequest.ASSERTION_CONSUMER_SERVICE_URL_ATTRIB_NAME);
+                    } else if (depth == 2 && !issuerFound &&
+                               SAMLConstants.SAML20_NS.equals(reader.getNamespaceURI()) &&
+                               Issuer.DEFAULT_ELEMENT_LOCAL_NAME.equals(reader.getLocalName())) {
+                        issuerSPProvidedId = getAttribute(reader, NameIDType.SPPROVIDED_ID_ATTRIB_NAME);
+                        // reads up to the end of the Issuer element, which has text content only
+                        issuer = DatatypeHelper.safeTrimOrNullString(reader.getElementText());
+                        issuerFound = true;
+                        depth--;
+                    } else if (depth == 2 && XMLConstants.XMLSIG_NS.equals(reader.getNamespaceURI()) &&
+                               Signature.DEFAULT_ELEMENT_LOCAL_NAME.equals(reader.getLocalName())) {
+                        signed = true;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (event == XMLStreamConstants.DTD || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                    throw reject(Rejection.DTD, "SAMLRequest contains a DTD.");
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw reject(Rejection.MALFORMED, "SAMLRequest is not well-formed XML.");
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Error while closing the XML stream reader", e);
+                }
+            }
+        }
+        return new SAMLRequestSummary(xml, namespaceURI, localName, id, destination, assertionConsumerServiceURL,
+                                      issuer, issuerSPProvidedId, signed);
+    }
+
+    /**
+     * Returns the value of the given unqualified attribute of the current element, trimmed as OpenSAML trims the
+     * values it assigns. A request that also has a namespace qualified attribute with the same local name is read
+     * differently by OpenSAML, and is rejected once it is unmarshalled.
+     */
+    private static String getAttribute(XMLStreamReader reader, String localName) {
+        return DatatypeHelper.safeTrimOrNullString(reader.getAttributeValue(javax.xml.XMLConstants.NULL_NS_URI,
+                                                                            localName));
+    }
+
+    private SAML2SSORuntimeException reject(Rejection rejection, String message) {
+
+        rejectionCounts.get(rejection).incrementAndGet();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Rejected SAMLRequest: " + message);
+        }
+        // throwing a unchecked here to avoid handling checked exception in all the places
+        SAML2SSORuntimeException ex = new SAML2SSORuntimeException(StatusCode.REQUESTER_URI, message);
+        ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
+        return ex;
+    }
+
+    /**
+     * Returns the number of SAMLRequests rejected for the given reason since the server started.
+     *
+     * @param rejection reason for rejection
+     * @return number of rejected requests
+     */
+    public long getRejectionCount(Rejection rejection) {
+        return rejectionCounts.get(rejection).get();
+    }
+}
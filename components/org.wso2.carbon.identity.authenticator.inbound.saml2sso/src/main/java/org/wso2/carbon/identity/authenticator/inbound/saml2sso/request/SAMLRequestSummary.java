@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.request;
+
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.AuthnRequest;
+
+/**
+ * Fields of a SAMLRequest read by {@link SAMLRequestGuard} while scanning it, together with its decoded XML. These
+ * are enough to resolve the service provider and to reject a request with an unknown issuer or ACS URL before the
+ * XML is unmarshalled into an OpenSAML object.
+ */
+public class SAMLRequestSummary {
+
+    private final byte[] xml;
+    private final String namespaceURI;
+    private final String localName;
+    private final String id;
+    private final String destination;
+    private final String assertionConsumerServiceURL;
+    private final String issuer;
+    private final String issuerSPProvidedId;
+    private final boolean signed;
+
+    SAMLRequestSummary(byte[] xml, String namespaceURI, String localName, String id, String destination,
+                       String assertionConsumerServiceURL, String issuer, String issuerSPProvidedId,
+                       boolean signed) {
+
+        this.xml = xml;
+        this.namespaceURI = namespaceURI;
+        this.localName = localName;
+        this.id = id;
+        this.destination = destination;
+        this.assertionConsumerServiceURL = assertionConsumerServiceURL;
+        this.issuer = issuer;
+        this.issuerSPProvidedId = issuerSPProvidedId;
+        this.signed = signed;
+    }
+
+    /**
+     * Returns the decoded XML of the request.
+     *
+     * @return UTF-8 encoded XML
+     */
+    public byte[] getXml() {
+        return xml;
+    }
+
+    public boolean isAuthnRequest() {
+        return SAMLConstants.SAML20P_NS.equals(namespaceURI) &&
+               AuthnRequest.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getAssertionConsumerServiceURL() {
+        return assertionConsumerServiceURL;
+    }
+
+    /**
+     * Returns the value of the Issuer element.
+     *
+     * @return trimmed issuer, or null if the request has no Issuer element or the element is empty
+     */
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getIssuerSPProvidedId() {
+        return issuerSPProvidedId;
+    }
+
+    /**
+     * Returns whether the request has an enveloped Signature element. This does not say anything about the validity
+     * of the signature.
+     *
+     * @return whether the request has a Signature element
+     */
+    public boolean isSigned() {
+        return signed;
+    }
+}
@@ -25,8 +25,7 @@ import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORuntimeException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
-
-import java.io.UnsupportedEncodingException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.QueryString;
 
 /**
  * SP Initiated SAML2 SSO Request.
@@ -35,6 +34,8 @@ public class SPInitRequest extends SAML2SSORequest {
 
     private static final long serialVersionUID = 7785061456909986055L;
 
+    private transient QueryString parsedQueryString;
+    private transient SAMLRequestSummary samlRequestSummary;
     private transient AuthnRequest authnRequest;
 
     public SPInitRequest(SAMLSpInitRequestBuilder builder) {
@@ -46,8 +47,8 @@ public class SPInitRequest extends SAML2SSORequest {
             return this.getBodyParameter(SAML2AuthConstants.SAML_REQUEST);
         } else {
             try {
-                return this.getQueryParameter(SAML2AuthConstants.SAML_REQUEST);
-            } catch (UnsupportedEncodingException e) {
+                return getParsedQueryString().getParameter(SAML2AuthConstants.SAML_REQUEST);
+            } catch (IllegalArgumentException e) {
                 // throwing a unchecked here to avoid handling checked exception in all the places
                 SAML2SSORuntimeException ex =
                         new SAML2SSORuntimeException(StatusCode.REQUESTER_URI, "Failed to URL-decode the SAMLRequest.");
@@ -62,8 +63,8 @@ public class SPInitRequest extends SAML2SSORequest {
             return this.getBodyParameter(SAML2AuthConstants.SIGNATURE);
         } else {
             try {
-                return this.getQueryParameter(SAML2AuthConstants.SIGNATURE);
-            } catch (UnsupportedEncodingException e) {
+                return getParsedQueryString().getParameter(SAML2AuthConstants.SIGNATURE);
+            } catch (IllegalArgumentException e) {
                 // throwing a unchecked here to avoid handling checked exception in all the places
                 SAML2SSORuntimeException ex =
                         new SAML2SSORuntimeException(StatusCode.REQUESTER_URI, "Failed to decode the Signature.");
@@ -78,8 +79,8 @@ public class SPInitRequest extends SAML2SSORequest {
             return this.getBodyParameter(SAML2AuthConstants.SIG_ALG);
         } else {
             try {
-                return this.getQueryParameter(SAML2AuthConstants.SIG_ALG);
-            } catch (UnsupportedEncodingException e) {
+                return getParsedQueryString().getParameter(SAML2AuthConstants.SIG_ALG);
+            } catch (IllegalArgumentException e) {
                 // throwing a unchecked here to avoid handling checked exception in all the places
                 SAML2SSORuntimeException ex =
                         new SAML2SSORuntimeException(StatusCode.REQUESTER_URI,
@@ -90,34 +91,67 @@ public class SPInitRequest extends SAML2SSORequest {
         }
     }
 
+    /**
+     * Returns the query string of the request split into its parameters. The query string is parsed once, and the
+     * result is used both for the decoded parameters and for the raw signature input of the HTTP-Redirect binding.
+     *
+     * @return parsed query string
+     */
+    public QueryString getParsedQueryString() {
+
+        if (parsedQueryString == null) {
+            parsedQueryString = QueryString.parse(getQueryString());
+        }
+        return parsedQueryString;
+    }
+
     public boolean isRedirect() {
         return !SAML2AuthConstants.Config.Value.POST.equalsIgnoreCase(this.httpMethod);
     }
 
+    /**
+     * Returns the fields of the SAMLRequest read while checking it against the size and structure limits. Use this
+     * instead of {@link #getAuthnRequest()} when these fields are enough, since it does not unmarshall the request.
+     *
+     * @return summary of the SAMLRequest
+     */
+    public SAMLRequestSummary getSAMLRequestSummary() {
+
+        if (samlRequestSummary == null) {
+            SAMLRequestSummary samlRequestSummary = SAMLRequestGuard.getInstance().decode(getSAMLRequest(),
+                                                                                          isRedirect());
+            if (!samlRequestSummary.isAuthnRequest()) {
+                throw buildNotAuthnRequestException();
+            }
+            this.samlRequestSummary = samlRequestSummary;
+        }
+        return samlRequestSummary;
+    }
+
     public AuthnRequest getAuthnRequest() {
 
         if (authnRequest == null) {
-            String decodedRequest;
-            if (isRedirect()) {
-                decodedRequest = SAML2AuthUtils.decodeForRedirect(getSAMLRequest());
-            } else {
-                decodedRequest = SAML2AuthUtils.decodeForPost(getSAMLRequest());
-            }
-            XMLObject request = SAML2AuthUtils.unmarshall(decodedRequest);
+            // the request is checked against the size and structure limits before it is parsed into a DOM
+            XMLObject request = SAML2AuthUtils.unmarshall(getSAMLRequestSummary().getXml());
             if (request instanceof AuthnRequest) {
                 AuthnRequest authnRequest = (AuthnRequest) request;
                 this.authnRequest = authnRequest;
             } else {
-                // throwing a unchecked here to avoid handling checked exception in all the places
-                SAML2SSORuntimeException ex =
-                        new SAML2SSORuntimeException(StatusCode.REQUESTER_URI, "SAMLRequest not an AuthnRequest.");
-                ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
-                throw ex;
+                throw buildNotAuthnRequestException();
             }
         }
         return authnRequest;
     }
 
+    private SAML2SSORuntimeException buildNotAuthnRequestException() {
+
+        // throwing a unchecked here to avoid handling checked exception in all the places
+        SAML2SSORuntimeException ex =
+                new SAML2SSORuntimeException(StatusCode.REQUESTER_URI, "SAMLRequest not an AuthnRequest.");
+        ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
+        return ex;
+    }
+
 // Need to enable debug logging for gateway during tests to uncomment this
 //    @Override
 //    public String toString() {
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.response;
+
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.EncryptedAssertion;
+import org.opensaml.xml.encryption.CipherData;
+import org.opensaml.xml.encryption.CipherValue;
+import org.opensaml.xml.encryption.EncryptedData;
+import org.opensaml.xml.encryption.EncryptedKey;
+import org.opensaml.xml.encryption.EncryptionException;
+import org.opensaml.xml.encryption.EncryptionMethod;
+import org.opensaml.xml.encryption.EncryptionParameters;
+import org.opensaml.xml.encryption.Encrypter;
+import org.opensaml.xml.encryption.KeyEncryptionParameters;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.signature.KeyInfo;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.CertificateCache;
+
+import java.security.KeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKey;
+
+/**
+ * Cache of assertion data encryption keys, for service providers that opt in to key reuse.
+ * <p/>
+ * A data encryption key and its key transport encryption under the service provider's certificate are reused for
+ * several assertions, so that the public key operation is done once per key instead of once per response. Each key is
+ * used for at most {@link Config#getEncryptionKeyMaxUses()} assertions and for at most
+ * {@link Config#getEncryptionKeyLifetime()} milliseconds. Every assertion is still encrypted with a fresh IV. A used
+ * up key is replaced once, by the first request that finds it used up, and the cache holds at most
+ * {@link Config#getCertificateCacheSize()} keys.
+ */
+public class EncryptionKeyCache {
+
+    private static volatile EncryptionKeyCache instance = new EncryptionKeyCache();
+
+    private final Map<String, SessionKey> sessionKeys = new ConcurrentHashMap<>();
+
+    private EncryptionKeyCache() {
+
+    }
+
+    public static EncryptionKeyCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Encrypts the given assertion with a data encryption key shared with other assertions for the same certificate
+     * and algorithms.
+     *
+     * @param assertion                assertion to encrypt
+     * @param certificate              encryption certificate of the service provider
+     * @param dataEncryptionAlgorithm  data encryption algorithm URI
+     * @param keyTransportAlgorithm    key transport algorithm URI
+     * @return encrypted assertion with the encrypted key placed inline
+     * @throws NoSuchAlgorithmException if the data encryption algorithm is not supported
+     * @throws KeyException             if the data encryption key cannot be generated
+     * @throws EncryptionException      if the assertion or the key cannot be encrypted
+     */
+    public EncryptedAssertion encrypt(Assertion assertion, CertificateCache.CachedCertificate certificate,
+                                      String dataEncryptionAlgorithm, String keyTransportAlgorithm)
+            throws NoSuchAlgorithmException, KeyException, EncryptionException {
+
+        SessionKey sessionKey = getSessionKey(certificate, dataEncryptionAlgorithm, keyTransportAlgorithm);
+
+        EncryptionParameters encParams = new EncryptionParameters();
+        encParams.setAlgorithm(dataEncryptionAlgorithm);
+        encParams.setEncryptionCredential(SecurityHelper.getSimpleCredential(sessionKey.key));
+        EncryptedData encryptedData = new Encrypter().encryptElement(assertion, encParams);
+
+        if (encryptedData.getKeyInfo() == null) {
+            encryptedData.setKeyInfo((KeyInfo) SAML2AuthUtils.buildXMLObject(KeyInfo.DEFAULT_ELEMENT_NAME));
+        }
+        encryptedData.getKeyInfo().getEncryptedKeys().add(sessionKey.buildEncryptedKey());
+
+        EncryptedAssertion encryptedAssertion = (EncryptedAssertion) SAML2AuthUtils.buildXMLObject(
+                EncryptedAssertion.DEFAULT_ELEMENT_NAME);
+        encryptedAssertion.setEncryptedData(encryptedData);
+        return encryptedAssertion;
+    }
+
+    private SessionKey getSessionKey(CertificateCache.CachedCertificate certificate, String dataEncryptionAlgorithm,
+                                     String keyTransportAlgorithm)
+            throws NoSuchAlgorithmException, KeyException, EncryptionException {
+
+        String cacheKey = certificate.getFingerprint() + '|' + dataEncryptionAlgorithm + '|' + keyTransportAlgorithm;
+        while (true) {
+            SessionKey sessionKey = sessionKeys.get(cacheKey);
+            if (sessionKey != null && sessionKey.tryAcquire()) {
+                return sessionKey;
+            }
+            if (sessionKey == null) {
+                evictIfFull();
+            }
+            SessionKey usedKey = sessionKey;
+            try {
+                // only the first caller to find the key used up replaces it, the others wait for its replacement
+                sessionKey = sessionKeys.compute(cacheKey, (key, current) -> current != null && current != usedKey ?
+                        current : newSessionKey(certificate, dataEncryptionAlgorithm, keyTransportAlgorithm));
+            } catch (SessionKeyException e) {
+                e.rethrow();
+            }
+            if (sessionKey.tryAcquire()) {
+                return sessionKey;
+            }
+        }
+    }
+
+    private static SessionKey newSessionKey(CertificateCache.CachedCertificate certificate,
+                                            String dataEncryptionAlgorithm, String keyTransportAlgorithm) {
+
+        try {
+            return new SessionKey(certificate, dataEncryptionAlgorithm, keyTransportAlgorithm);
+        } catch (NoSuchAlgorithmException | KeyException | EncryptionException e) {
+            throw new SessionKeyException(e);
+        }
+    }
+
+    /**
+     * Removes the expired keys, which include the keys of certificates that are no longer used, and then arbitrary
+     * keys while the cache holds {@link Config#getCertificateCacheSize()} keys or more.
+     */
+    private void evictIfFull() {
+
+        int maxSize = Config.getInstance().getCertificateCacheSize();
+        if (sessionKeys.size() < maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        sessionKeys.values().removeIf(sessionKey -> sessionKey.isExpired(now));
+        Iterator<String> iterator = sessionKeys.keySet().iterator();
+        while (sessionKeys.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public void clear() {
+        sessionKeys.clear();
+    }
+
+    /**
+     * A data encryption key and the Base64 encoded key transport encryption of it.
+     */
+    private static class SessionKey {
+
+        private final SecretKey key;
+        private final String keyTransportAlgorithm;
+        private final String encryptedKeyValue;
+        private final long expiry;
+        private final int maxUses;
+        private final AtomicInteger uses = new AtomicInteger();
+
+        private SessionKey(CertificateCache.CachedCertificate certificate, String dataEncryptionAlgorithm,
+                           String keyTransportAlgorithm)
+                throws NoSuchAlgorithmException, KeyException, EncryptionException {
+
+            this.key = SecurityHelper.generateSymmetricKey(dataEncryptionAlgorithm);
+            this.keyTransportAlgorithm = keyTransportAlgorithm;
+
+            KeyEncryptionParameters kekParams = new KeyEncryptionParameters();
+            kekParams.setAlgorithm(keyTransportAlgorithm);
+            kekParams.setEncryptionCredential(certificate.getCredential());
+            EncryptedKey encryptedKey = new Encrypter().encryptKey(key, kekParams, SAML2AuthUtils.newDocument());
+            this.encryptedKeyValue = encryptedKey.getCipherData().getCipherValue().getValue();
+
+            this.expiry = System.currentTimeMillis() + Config.getInstance().getEncryptionKeyLifetime();
+            this.maxUses = Config.getInstance().getEncryptionKeyMaxUses();
+        }
+
+        private boolean tryAcquire() {
+            return !isExpired(System.currentTimeMillis()) && uses.incrementAndGet() <= maxUses;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiry;
+        }
+
+        /**
+         * Builds a new EncryptedKey element for one assertion. XML objects cannot be shared between documents, so
+         * only the encrypted key value is cached.
+         */
+        private EncryptedKey buildEncryptedKey() {
+
+            EncryptionMethod encryptionMethod = (EncryptionMethod) SAML2AuthUtils.buildXMLObject(
+                    EncryptionMethod.DEFAULT_ELEMENT_NAME);
+            encryptionMethod.setAlgorithm(keyTransportAlgorithm);
+            CipherValue cipherValue = (CipherValue) SAML2AuthUtils.buildXMLObject(CipherValue.DEFAULT_ELEMENT_NAME);
+            cipherValue.setValue(encryptedKeyValue);
+            CipherData cipherData = (CipherData) SAML2AuthUtils.buildXMLObject(CipherData.DEFAULT_ELEMENT_NAME);
+            cipherData.setCipherValue(cipherValue);
+
+            EncryptedKey encryptedKey = (EncryptedKey) SAML2AuthUtils.buildXMLObject(
+                    EncryptedKey.DEFAULT_ELEMENT_NAME);
+            encryptedKey.setEncryptionMethod(encryptionMethod);
+            encryptedKey.setCipherData(cipherData);
+            return encryptedKey;
+        }
+    }
+
+    /**
+     * Carries a checked exception thrown while creating a session key out of a map computation.
+     */
+    private static class SessionKeyException extends RuntimeException {
+
+        private SessionKeyException(Exception cause) {
+            super(cause);
+        }
+
+        private void rethrow() throws NoSuchAlgorithmException, KeyException, EncryptionException {
+
+            if (getCause() instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) getCause();
+            } else if (getCause() instanceof KeyException) {
+                throw (KeyException) getCause();
+            }
+            throw (EncryptionException) getCause();
+        }
+    }
+}
@@ -49,9 +49,7 @@ public class SAML2SSOResponse extends GatewayResponse {
 
     public Response getResponse() {
         if (response == null) {
-            String decodedRequest;
-            decodedRequest = SAML2AuthUtils.decodeForPost(getRespString());
-            XMLObject request = SAML2AuthUtils.unmarshall(decodedRequest);
+            XMLObject request = SAML2AuthUtils.unmarshallForPost(getRespString());
             if (request instanceof Response) {
                 Response response = (Response) request;
                 this.response = response;
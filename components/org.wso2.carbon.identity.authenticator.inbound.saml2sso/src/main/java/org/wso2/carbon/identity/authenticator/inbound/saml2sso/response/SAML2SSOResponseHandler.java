@@ -140,7 +140,12 @@ public class SAML2SSOResponseHandler extends AbstractResponseHandler {
                                                                       context);
         builder.setResponse(samlResponse);
 
-        String respString = SAML2AuthUtils.encodeForPost(SAML2AuthUtils.marshall(samlResponse));
+        String respString;
+        if (config.streamResponse() && !config.signResponse()) {
+            respString = SAMLResponseWriter.writeAndEncodeForPost(samlResponse);
+        } else {
+            respString = SAML2AuthUtils.marshallAndEncodeForPost(samlResponse);
+        }
         builder.setRespString(respString);
 
         builder.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
@@ -200,7 +205,7 @@ public class SAML2SSOResponseHandler extends AbstractResponseHandler {
             builder.setAcsUrl(e2.getAcsUrl());
         }
         builder.setResponse(samlResponse);
-        builder.setRespString(SAML2AuthUtils.encodeForPost(SAML2AuthUtils.marshall(samlResponse)));
+        builder.setRespString(SAML2AuthUtils.marshallAndEncodeForPost(samlResponse));
 
         return response;
     }
@@ -232,7 +237,7 @@ public class SAML2SSOResponseHandler extends AbstractResponseHandler {
                                                                   "Server Error", e1.getAcsUrl());
         }
         builder.setResponse(samlResponse);
-        builder.setRespString(SAML2AuthUtils.encodeForPost(SAML2AuthUtils.marshall(samlResponse)));
+        builder.setRespString(SAML2AuthUtils.marshallAndEncodeForPost(samlResponse));
         builder.setAcsUrl(e1.getAcsUrl());
 
         return response;
@@ -246,7 +251,8 @@ public class SAML2SSOResponseHandler extends AbstractResponseHandler {
         org.wso2.carbon.identity.gateway.common.model.sp.ResponseBuilderConfig responseBuilderConfigs =
                 getResponseBuilderConfigs(authenticationContext);
 
-        ResponseBuilderConfig responseBuilderConfig = new ResponseBuilderConfig(responseBuilderConfigs);
+        ResponseBuilderConfig responseBuilderConfig =
+                ResponseBuilderConfig.getConfig(authenticationContext.getServiceProviderId(), responseBuilderConfigs);
         if (logger.isDebugEnabled()) {
             logger.debug(responseBuilderConfig.toString());
         }
@@ -20,7 +20,6 @@ package org.wso2.carbon.identity.authenticator.inbound.saml2sso.response;
 
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
-import org.opensaml.Configuration;
 import org.opensaml.common.SAMLVersion;
 import org.opensaml.saml2.core.Assertion;
 import org.opensaml.saml2.core.Attribute;
@@ -68,22 +67,20 @@ import org.opensaml.xml.schema.XSString;
 import org.opensaml.xml.schema.impl.XSStringBuilder;
 import org.opensaml.xml.security.SecurityHelper;
 import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.x509.X509Credential;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
-import org.wso2.carbon.identity.auth.saml2.common.X509CredentialImpl;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.bean.SAML2SSOContext;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOResponseBuilderException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.ResponseBuilderConfig;
-import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.Utils;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.CertificateCache;
 import org.wso2.carbon.identity.common.base.handler.AbstractMessageHandler;
 import org.wso2.carbon.identity.gateway.context.AuthenticationContext;
 import org.wso2.carbon.identity.mgt.claim.Claim;
 
 import java.security.KeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -94,11 +91,35 @@ import java.util.Set;
  */
 public class SAMLResponseBuilder extends AbstractMessageHandler {
 
+    // Builders are stateless, so one instance of each is shared. The XML objects they build cannot be shared or
+    // templated, since an OpenSAML XML object belongs to a single parent and its DOM to a single document.
+    private static final AssertionBuilder ASSERTION_BUILDER = new AssertionBuilder();
+    private static final AttributeBuilder ATTRIBUTE_BUILDER = new AttributeBuilder();
+    private static final AttributeStatementBuilder ATTRIBUTE_STATEMENT_BUILDER = new AttributeStatementBuilder();
+    private static final AudienceBuilder AUDIENCE_BUILDER = new AudienceBuilder();
+    private static final AudienceRestrictionBuilder AUDIENCE_RESTRICTION_BUILDER = new AudienceRestrictionBuilder();
+    private static final AuthnContextBuilder AUTHN_CONTEXT_BUILDER = new AuthnContextBuilder();
+    private static final AuthnContextClassRefBuilder AUTHN_CONTEXT_CLASS_REF_BUILDER =
+            new AuthnContextClassRefBuilder();
+    private static final AuthnStatementBuilder AUTHN_STATEMENT_BUILDER = new AuthnStatementBuilder();
+    private static final ConditionsBuilder CONDITIONS_BUILDER = new ConditionsBuilder();
+    private static final IssuerBuilder ISSUER_BUILDER = new IssuerBuilder();
+    private static final NameIDBuilder NAME_ID_BUILDER = new NameIDBuilder();
+    private static final ResponseBuilder RESPONSE_BUILDER = new ResponseBuilder();
+    private static final StatusBuilder STATUS_BUILDER = new StatusBuilder();
+    private static final StatusCodeBuilder STATUS_CODE_BUILDER = new StatusCodeBuilder();
+    private static final StatusMessageBuilder STATUS_MESSAGE_BUILDER = new StatusMessageBuilder();
+    private static final SubjectBuilder SUBJECT_BUILDER = new SubjectBuilder();
+    private static final SubjectConfirmationBuilder SUBJECT_CONFIRMATION_BUILDER = new SubjectConfirmationBuilder();
+    private static final SubjectConfirmationDataBuilder SUBJECT_CONFIRMATION_DATA_BUILDER =
+            new SubjectConfirmationDataBuilder();
+    private static final XSStringBuilder XS_STRING_BUILDER = new XSStringBuilder();
+
     protected Response buildSAMLResponse(String subject, Set<Claim> claims, SAML2SSOContext saml2SSOContext,
                                          ResponseBuilderConfig config, AuthenticationContext context)
             throws SAML2SSOResponseBuilderException {
 
-        Response response = new ResponseBuilder().buildObject();
+        Response response = RESPONSE_BUILDER.buildObject();
         response.setIssuer(getIssuer());
         response.setID(SAML2AuthUtils.createID());
         if (!saml2SSOContext.isIdpInitSSO()) {
@@ -113,8 +134,8 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
         buildAssertion(subject, claims, response, issueInstant, saml2SSOContext, config, context);
 
         if (config.signResponse()) {
-            SAML2AuthUtils.setSignature(response, config.getSigningAlgorithmUri(), config
-                    .getDigestAlgorithmUri(), true, SAML2AuthUtils.getServerCredentials());
+            SAML2AuthUtils.setSignature(response, config.getSigningAlgorithmUri(), config.getDigestAlgorithmUri(),
+                    true, SAML2AuthUtils.getServerCredentials(config.getSigningKeyAlias()));
         }
 
         return response;
@@ -122,7 +143,7 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
 
     protected Issuer getIssuer() {
 
-        Issuer issuer = new IssuerBuilder().buildObject();
+        Issuer issuer = ISSUER_BUILDER.buildObject();
         issuer.setFormat(NameID.ENTITY);
         String idPEntityId = Config.getInstance().getIdpEntityId();
         issuer.setValue(idPEntityId);
@@ -136,23 +157,22 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
 
         DateTime notOnOrAfter = new DateTime(issueInstant.getMillis() + config.getNotOnOrAfterPeriod() * 60L * 1000L);
         DateTime currentTime = new DateTime();
-        Assertion assertion = new AssertionBuilder().buildObject();
+        Assertion assertion = ASSERTION_BUILDER.buildObject();
         assertion.setID(SAML2AuthUtils.createID());
         assertion.setVersion(SAMLVersion.VERSION_20);
         assertion.setIssuer(getIssuer());
         assertion.setIssueInstant(currentTime);
-        Subject subjectElem = new SubjectBuilder().buildObject();
+        Subject subjectElem = SUBJECT_BUILDER.buildObject();
 
-        NameID nameId = new NameIDBuilder().buildObject();
+        NameID nameId = NAME_ID_BUILDER.buildObject();
         nameId.setValue(subject);
         nameId.setFormat(config.getNameIdFormat());
 
         subjectElem.setNameID(nameId);
 
-        SubjectConfirmation subjectConfirmation = new SubjectConfirmationBuilder()
-                .buildObject();
+        SubjectConfirmation subjectConfirmation = SUBJECT_CONFIRMATION_BUILDER.buildObject();
         subjectConfirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
-        SubjectConfirmationData scData = new SubjectConfirmationDataBuilder().buildObject();
+        SubjectConfirmationData scData = SUBJECT_CONFIRMATION_DATA_BUILDER.buildObject();
         scData.setRecipient(saml2SSOContext.getAssertionConsumerURL());
         scData.setNotOnOrAfter(notOnOrAfter);
         if (!saml2SSOContext.isIdpInitSSO()) {
@@ -162,10 +182,9 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
         subjectElem.getSubjectConfirmations().add(subjectConfirmation);
 
         for (String recipient : config.getRequestedRecipients()) {
-            subjectConfirmation = new SubjectConfirmationBuilder()
-                    .buildObject();
+            subjectConfirmation = SUBJECT_CONFIRMATION_BUILDER.buildObject();
             subjectConfirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
-            scData = new SubjectConfirmationDataBuilder().buildObject();
+            scData = SUBJECT_CONFIRMATION_DATA_BUILDER.buildObject();
             scData.setRecipient(recipient);
             scData.setNotOnOrAfter(notOnOrAfter);
             if (!saml2SSOContext.isIdpInitSSO()) {
@@ -177,11 +196,11 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
 
         assertion.setSubject(subjectElem);
 
-        AuthnStatement authStmt = new AuthnStatementBuilder().buildObject();
+        AuthnStatement authStmt = AUTHN_STATEMENT_BUILDER.buildObject();
         authStmt.setAuthnInstant(new DateTime());
 
-        AuthnContext authContext = new AuthnContextBuilder().buildObject();
-        AuthnContextClassRef authCtxClassRef = new AuthnContextClassRefBuilder().buildObject();
+        AuthnContext authContext = AUTHN_CONTEXT_BUILDER.buildObject();
+        AuthnContextClassRef authCtxClassRef = AUTHN_CONTEXT_CLASS_REF_BUILDER.buildObject();
         authCtxClassRef.setAuthnContextClassRef(AuthnContext.PASSWORD_AUTHN_CTX);
         authContext.setAuthnContextClassRef(authCtxClassRef);
         authStmt.setAuthnContext(authContext);
@@ -189,17 +208,16 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
 
         buildAttributeStatement(claims, assertion, saml2SSOContext, config, context);
 
-        AudienceRestriction audienceRestriction = new AudienceRestrictionBuilder()
-                .buildObject();
-        Audience issuerAudience = new AudienceBuilder().buildObject();
+        AudienceRestriction audienceRestriction = AUDIENCE_RESTRICTION_BUILDER.buildObject();
+        Audience issuerAudience = AUDIENCE_BUILDER.buildObject();
         issuerAudience.setAudienceURI(saml2SSOContext.getIssuerWithDomain());
         audienceRestriction.getAudiences().add(issuerAudience);
         for (String requestedAudience : config.getRequestedAudiences()) {
-            Audience audience = new AudienceBuilder().buildObject();
+            Audience audience = AUDIENCE_BUILDER.buildObject();
             audience.setAudienceURI(requestedAudience);
             audienceRestriction.getAudiences().add(audience);
         }
-        Conditions conditions = new ConditionsBuilder().buildObject();
+        Conditions conditions = CONDITIONS_BUILDER.buildObject();
         conditions.setNotBefore(currentTime);
         conditions.setNotOnOrAfter(notOnOrAfter);
         conditions.getAudienceRestrictions().add(audienceRestriction);
@@ -208,21 +226,21 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
         // signing has to be ideally done at transport binding level. encryption also will have to move there.
 
         SAML2AuthUtils.setSignature(assertion, config.getSigningAlgorithmUri(), config.getDigestAlgorithmUri(),
-                true, SAML2AuthUtils.getServerCredentials());
+                true, SAML2AuthUtils.getServerCredentials(config.getSigningKeyAlias()));
 
         encryptAssertion(response, assertion, config);
     }
 
     protected void buildStatus(Response response, String statusCode, String statusMessage) {
 
-        Status status = new StatusBuilder().buildObject();
+        Status status = STATUS_BUILDER.buildObject();
 
-        StatusCode statusCodeObject = new StatusCodeBuilder().buildObject();
+        StatusCode statusCodeObject = STATUS_CODE_BUILDER.buildObject();
         statusCodeObject.setValue(statusCode);
         status.setStatusCode(statusCodeObject);
 
         if (statusMessage != null) {
-            StatusMessage statusMessageObject = new StatusMessageBuilder().buildObject();
+            StatusMessage statusMessageObject = STATUS_MESSAGE_BUILDER.buildObject();
             statusMessageObject.setMessage(statusMessage);
             status.setStatusMessage(statusMessageObject);
         }
@@ -248,9 +266,9 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
                 ex.setAcsUrl(response.getDestination());
                 throw ex;
             }
-            Certificate certificate;
+            CertificateCache.CachedCertificate certificate;
             try {
-                certificate = Utils.decodeCertificate(encodedCert);
+                certificate = CertificateCache.getInstance().getCertificate(encodedCert);
             } catch (CertificateException e) {
                 SAML2SSOResponseBuilderException ex =
                         new SAML2SSOResponseBuilderException(StatusCode.RESPONDER_URI,
@@ -260,11 +278,16 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
                 throw ex;
             }
 
-            Credential symmetricCredential = null;
+            EncryptedAssertion encryptedAssertion;
             try {
-                symmetricCredential = SecurityHelper.getSimpleCredential(
-                        SecurityHelper.generateSymmetricKey("http://www.w3.org/2001/04/xmlenc#aes256-cbc"));
-            } catch (NoSuchAlgorithmException | KeyException e) {
+                if (config.isEncryptionKeyReuse()) {
+                    encryptedAssertion = EncryptionKeyCache.getInstance().encrypt(assertion, certificate,
+                            config.getAssertionEncryptionAlgorithmUri(), config.getKeyEncryptionAlgorithmUri());
+                } else {
+                    encryptedAssertion = encryptWithNewKey(assertion, certificate.getCredential(),
+                            config.getAssertionEncryptionAlgorithmUri(), config.getKeyEncryptionAlgorithmUri());
+                }
+            } catch (NoSuchAlgorithmException | KeyException | EncryptionException e) {
                 SAML2SSOResponseBuilderException ex =
                         new SAML2SSOResponseBuilderException(StatusCode.RESPONDER_URI,
                                 "Error occurred while encrypting assertion.", e);
@@ -273,52 +296,47 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
                 throw ex;
             }
 
-            EncryptionParameters encParams = new EncryptionParameters();
-            encParams.setAlgorithm("http://www.w3.org/2001/04/xmlenc#aes256-cbc");
-            encParams.setEncryptionCredential(symmetricCredential);
+            response.getEncryptedAssertions().add(encryptedAssertion);
+        }
+    }
 
-            KeyEncryptionParameters keyEncryptionParameters = new KeyEncryptionParameters();
-            keyEncryptionParameters.setAlgorithm("http://www.w3.org/2001/04/xmlenc#rsa-1_5");
-            keyEncryptionParameters.setEncryptionCredential(new X509CredentialImpl((X509Certificate) certificate));
+    private EncryptedAssertion encryptWithNewKey(Assertion assertion, X509Credential encryptionCredential,
+                                                 String dataEncryptionAlgorithm, String keyTransportAlgorithm)
+            throws NoSuchAlgorithmException, KeyException, EncryptionException {
 
-            Encrypter encrypter = new Encrypter(encParams, keyEncryptionParameters);
-            encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+        Credential symmetricCredential = SecurityHelper.getSimpleCredential(
+                SecurityHelper.generateSymmetricKey(dataEncryptionAlgorithm));
 
-            EncryptedAssertion encryptedAssertion = null;
-            try {
-                encryptedAssertion = encrypter.encrypt(assertion);
-            } catch (EncryptionException e) {
-                SAML2SSOResponseBuilderException ex =
-                        new SAML2SSOResponseBuilderException(StatusCode.RESPONDER_URI,
-                                "Error occurred while encrypting assertion.", e);
-                ex.setInResponseTo(assertion.getID());
-                ex.setAcsUrl(response.getDestination());
-                throw ex;
-            }
+        EncryptionParameters encParams = new EncryptionParameters();
+        encParams.setAlgorithm(dataEncryptionAlgorithm);
+        encParams.setEncryptionCredential(symmetricCredential);
 
-            response.getEncryptedAssertions().add(encryptedAssertion);
-        }
+        KeyEncryptionParameters keyEncryptionParameters = new KeyEncryptionParameters();
+        keyEncryptionParameters.setAlgorithm(keyTransportAlgorithm);
+        keyEncryptionParameters.setEncryptionCredential(encryptionCredential);
+
+        Encrypter encrypter = new Encrypter(encParams, keyEncryptionParameters);
+        encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+        return encrypter.encrypt(assertion);
     }
 
     protected void buildAttributeStatement(Set<Claim> claims, Assertion assertion, SAML2SSOContext saml2SSOContext,
                                            ResponseBuilderConfig config, AuthenticationContext context) {
 
-        AttributeStatement attStmt = new AttributeStatementBuilder().buildObject();
+        AttributeStatement attStmt = ATTRIBUTE_STATEMENT_BUILDER.buildObject();
         Iterator<Claim> iterator = claims.iterator();
         while (iterator.hasNext()) {
             Claim claim = iterator.next();
             String claimUri = claim.getClaimUri();
             String claimValue = claim.getValue();
-            Attribute attribute = new AttributeBuilder().buildObject();
+            Attribute attribute = ATTRIBUTE_BUILDER.buildObject();
             attribute.setName(claimUri);
             //setting NAMEFORMAT attribute value to basic attribute profile
             attribute.setNameFormat(Attribute.BASIC);
             // look
             // https://wiki.shibboleth.net/confluence/display/OpenSAML/OSTwoUsrManJavaAnyTypes
-            XSStringBuilder stringBuilder = (XSStringBuilder) Configuration.getBuilderFactory().
-                    getBuilder(XSString.TYPE_NAME);
-            XSString stringValue = stringBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString
-                    .TYPE_NAME);
+            XSString stringValue = XS_STRING_BUILDER.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME,
+                                                                 XSString.TYPE_NAME);
             stringValue.setValue(claimValue);
             attribute.getAttributeValues().add(stringValue);
             attStmt.getAttributes().add(attribute);
@@ -342,9 +360,9 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
         if (statusCodes == null || statusCodes.isEmpty()) {
             return null;
         }
-        Response response = new ResponseBuilder().buildObject();
+        Response response = RESPONSE_BUILDER.buildObject();
         response.setIssuer(getIssuer());
-        Status status = new StatusBuilder().buildObject();
+        Status status = STATUS_BUILDER.buildObject();
         StatusCode statusCode = null;
         for (String statCode : statusCodes) {
             statusCode = buildStatusCode(statCode, statusCode);
@@ -370,7 +388,7 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
             return childStatusCode;
         }
 
-        StatusCode statusCode = new StatusCodeBuilder().buildObject();
+        StatusCode statusCode = STATUS_CODE_BUILDER.buildObject();
         statusCode.setValue(parentStatusCode);
 
         if (childStatusCode != null) {
@@ -384,7 +402,7 @@ public class SAMLResponseBuilder extends AbstractMessageHandler {
     private Status buildStatusMsg(Status status, String statusMsg) {
 
         if (statusMsg != null) {
-            StatusMessage statusMesssage = new StatusMessageBuilder().buildObject();
+            StatusMessage statusMesssage = STATUS_MESSAGE_BUILDER.buildObject();
             statusMesssage.setMessage(statusMsg);
             status.setStatusMessage(statusMesssage);
         }
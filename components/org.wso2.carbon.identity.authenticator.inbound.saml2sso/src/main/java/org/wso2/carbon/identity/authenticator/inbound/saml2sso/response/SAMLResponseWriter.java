@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.response;
+
+import org.joda.time.DateTime;
+import org.opensaml.Configuration;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameIDType;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.Status;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.core.StatusMessage;
+import org.opensaml.saml2.core.StatusResponseType;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.util.Base64;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes an unsigned SAML2 Response directly as a stream of XML events, instead of marshalling it into a DOM and
+ * serializing the DOM. The Response element, its Issuer and its Status are written from the fields of the Response
+ * object. Assertions are signed or encrypted on their own, so they are copied from their serialized DOMs as they
+ * are.
+ */
+public class SAMLResponseWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    private SAMLResponseWriter() {
+
+    }
+
+    /**
+     * Writes the given response and Base64 encodes it for the HTTP-POST binding in a single pass.
+     *
+     * @param response unsigned SAML2 response
+     * @return Base64 encoded response
+     */
+    public static String writeAndEncodeForPost(Response response) {
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+        try {
+            Base64.OutputStream base64OutputStream = new Base64.OutputStream(byteArrayOutputStream,
+                                                                             Base64.ENCODE | Base64.DONT_BREAK_LINES);
+            write(response, base64OutputStream);
+            // closing the encoding stream writes the final, padded block
+            base64OutputStream.close();
+            return byteArrayOutputStream.toString(StandardCharsets.US_ASCII.name());
+        } catch (IOException e) {
+            throw new SAML2SSORuntimeException(StatusCode.RESPONDER_URI, "Error while encoding the SAML2 response.",
+                                               e);
+        }
+    }
+
+    /**
+     * Writes the given response as UTF-8 encoded XML into the given stream.
+     *
+     * @param response     unsigned SAML2 response
+     * @param outputStream stream to write the response to
+     */
+    public static void write(Response response, OutputStream outputStream) {
+
+        if (response.getSignature() != null) {
+            throw new SAML2SSORuntimeException(StatusCode.RESPONDER_URI, "Cannot stream a signed SAML2 response.");
+        }
+        try {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream,
+                                                                          StandardCharsets.UTF_8.name());
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.writeStartElement(SAMLConstants.SAML20P_PREFIX, Response.DEFAULT_ELEMENT_LOCAL_NAME,
+                                     SAMLConstants.SAML20P_NS);
+            writer.writeNamespace(SAMLConstants.SAML20P_PREFIX, SAMLConstants.SAML20P_NS);
+            writeAttribute(writer, StatusResponseType.CONSENT_ATTRIB_NAME, response.getConsent());
+            writeAttribute(writer, StatusResponseType.DESTINATION_ATTRIB_NAME, response.getDestination());
+            writeAttribute(writer, StatusResponseType.ID_ATTRIB_NAME, response.getID());
+            writeAttribute(writer, StatusResponseType.IN_RESPONSE_TO_ATTRIB_NAME, response.getInResponseTo());
+            writeAttribute(writer, StatusResponseType.ISSUE_INSTANT_ATTRIB_NAME, response.getIssueInstant());
+            if (response.getVersion() != null) {
+                writeAttribute(writer, StatusResponseType.VERSION_ATTRIB_NAME, response.getVersion().toString());
+            }
+
+            for (XMLObject child : response.getOrderedChildren()) {
+                if (child instanceof Issuer) {
+                    writeIssuer(writer, (Issuer) child);
+                } else if (child instanceof Status) {
+                    writeStatus(writer, (Status) child);
+                } else if (child instanceof Assertion || child instanceof EncryptedAssertion) {
+                    // an empty text event closes any pending start tag before the raw bytes are written
+                    writer.writeCharacters("");
+                    writer.flush();
+                    SAML2AuthUtils.marshallFragment(child, outputStream);
+                } else if (child != null) {
+                    throw new SAML2SSORuntimeException(StatusCode.RESPONDER_URI, "Cannot stream a SAML2 response " +
+                                                       "containing " + child.getElementQName() + ".");
+                }
+            }
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new SAML2SSORuntimeException(StatusCode.RESPONDER_URI, "Error while writing the SAML2 response.", e);
+        }
+    }
+
+    private static void writeIssuer(XMLStreamWriter writer, Issuer issuer) throws XMLStreamException {
+
+        writer.writeStartElement(SAMLConstants.SAML20_PREFIX, Issuer.DEFAULT_ELEMENT_LOCAL_NAME,
+                                 SAMLConstants.SAML20_NS);
+        writer.writeNamespace(SAMLConstants.SAML20_PREFIX, SAMLConstants.SAML20_NS);
+        writeAttribute(writer, NameIDType.FORMAT_ATTRIB_NAME, issuer.getFormat());
+        writeAttribute(writer, NameIDType.NAME_QUALIFIER_ATTRIB_NAME, issuer.getNameQualifier());
+        writeAttribute(writer, NameIDType.SP_NAME_QUALIFIER_ATTRIB_NAME, issuer.getSPNameQualifier());
+        writeAttribute(writer, NameIDType.SPPROVIDED_ID_ATTRIB_NAME, issuer.getSPProvidedID());
+        if (issuer.getValue() != null) {
+            writer.writeCharacters(issuer.getValue());
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeStatus(XMLStreamWriter writer, Status status) throws XMLStreamException {
+
+        if (status.getStatusDetail() != null) {
+            throw new SAML2SSORuntimeException(StatusCode.RESPONDER_URI, "Cannot stream a SAML2 response " +
+                                               "containing a StatusDetail.");
+        }
+        writer.writeStartElement(SAMLConstants.SAML20P_PREFIX, Status.DEFAULT_ELEMENT_LOCAL_NAME,
+                                 SAMLConstants.SAML20P_NS);
+        if (status.getStatusCode() != null) {
+            writeStatusCode(writer, status.getStatusCode());
+        }
+        StatusMessage statusMessage = status.getStatusMessage();
+        if (statusMessage != null) {
+            writer.writeStartElement(SAMLConstants.SAML20P_PREFIX, StatusMessage.DEFAULT_ELEMENT_LOCAL_NAME,
+                                     SAMLConstants.SAML20P_NS);
+            if (statusMessage.getMessage() != null) {
+                writer.writeCharacters(statusMessage.getMessage());
+            }
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeStatusCode(XMLStreamWriter writer, StatusCode statusCode) throws XMLStreamException {
+
+        if (statusCode.getStatusCode() == null) {
+            writer.writeEmptyElement(SAMLConstants.SAML20P_PREFIX, StatusCode.DEFAULT_ELEMENT_LOCAL_NAME,
+                                     SAMLConstants.SAML20P_NS);
+            writeAttribute(writer, StatusCode.VALUE_ATTRIB_NAME, statusCode.getValue());
+        } else {
+            writer.writeStartElement(SAMLConstants.SAML20P_PREFIX, StatusCode.DEFAULT_ELEMENT_LOCAL_NAME,
+                                     SAMLConstants.SAML20P_NS);
+            writeAttribute(writer, StatusCode.VALUE_ATTRIB_NAME, statusCode.getValue());
+            writeStatusCode(writer, statusCode.getStatusCode());
+            writer.writeEndElement();
+        }
+    }
+
+    private static void writeAttribute(XMLStreamWriter writer, String name, DateTime value)
+            throws XMLStreamException {
+
+        if (value != null) {
+            writer.writeAttribute(name, Configuration.getSAMLDateFormatter().print(value));
+        }
+    }
+
+    private static void writeAttribute(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+
+        if (value != null) {
+            writer.writeAttribute(name, value);
+        }
+    }
+}
@@ -21,7 +21,6 @@ package org.wso2.carbon.identity.authenticator.inbound.saml2sso.util;
 import org.apache.commons.lang.StringUtils;
 import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.saml2.core.StatusCode;
-import org.opensaml.ws.transport.http.HTTPTransportUtils;
 import org.opensaml.xml.security.CriteriaSet;
 import org.opensaml.xml.security.SecurityException;
 import org.opensaml.xml.security.SecurityHelper;
@@ -40,12 +39,16 @@ import org.opensaml.xml.util.DatatypeHelper;
 import org.opensaml.xml.validation.ValidationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.auth.saml2.common.CryptoConfig;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.auth.saml2.common.SignatureAlgorithms;
 import org.wso2.carbon.identity.auth.saml2.common.X509CredentialImpl;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.bean.SAML2SSOContext;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORequestValidationException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.RequestValidatorConfig;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.request.SPInitRequest;
+import org.wso2.carbon.identity.common.base.exception.IdentityRuntimeException;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
@@ -53,6 +56,8 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utilities pertaining to validating signatures in AuthnRequest.
@@ -61,14 +66,16 @@ public class AuthnReqSigUtil {
 
     private static Logger logger = LoggerFactory.getLogger(AuthnReqSigUtil.class);
 
+    private static final Map<String, SPTrustEngine> TRUST_ENGINES = new ConcurrentHashMap<>();
+
     public static boolean validateAuthnRequestSignature(AuthnRequest authnRequest, SAML2SSOContext saml2SSOContext,
                                                         RequestValidatorConfig config)
             throws SAML2SSORequestValidationException, SAML2SSOServerException {
 
         String encodedCert = config.getSigningCertificate();
-        X509Certificate certificate;
+        CertificateCache.CachedCertificate certificate;
         try {
-            certificate = (X509Certificate) Utils.decodeCertificate(encodedCert);
+            certificate = CertificateCache.getInstance().getCertificate(encodedCert);
         } catch (CertificateException e) {
             SAML2SSOServerException ex =
                     new SAML2SSOServerException(StatusCode.RESPONDER_URI,
@@ -80,20 +87,55 @@ public class AuthnReqSigUtil {
 
         SPInitRequest spInitRequest = ((SPInitRequest) saml2SSOContext.getRequest());
         if (spInitRequest.isRedirect()) {
-            return validateDeflateSignature(spInitRequest.getQueryString(), spInitRequest.getSignature(),
-                                            spInitRequest.getSignatureAlgorithm(), certificate, saml2SSOContext.getId(),
-                                            saml2SSOContext.getAssertionConsumerURL(), saml2SSOContext.getSPEntityId());
+            return validateDeflateSignature(spInitRequest.getParsedQueryString(), spInitRequest.getSignature(),
+                                            spInitRequest.getSignatureAlgorithm(),
+                                            getTrustEngine(saml2SSOContext.getSPEntityId(), certificate),
+                                            saml2SSOContext.getId(), saml2SSOContext.getAssertionConsumerURL());
         } else {
-            return validateXMLSignature(authnRequest, certificate, saml2SSOContext.getId(),
+            return validateXMLSignature(authnRequest, certificate.getCredential(), saml2SSOContext.getId(),
                                         saml2SSOContext.getAssertionConsumerURL());
         }
     }
 
+    /**
+     * Returns the trust engine of the given service provider, building it if there is none yet or if the SP's
+     * signing certificate has changed since it was built.
+     */
+    private static SPTrustEngine getTrustEngine(String spEntityId, CertificateCache.CachedCertificate certificate) {
+
+        if (spEntityId == null) {
+            return new SPTrustEngine(null, certificate.getFingerprint(), certificate.getCredential());
+        }
+        SPTrustEngine trustEngine = TRUST_ENGINES.get(spEntityId);
+        if (trustEngine == null || !trustEngine.fingerprint.equals(certificate.getFingerprint())) {
+            trustEngine = new SPTrustEngine(spEntityId, certificate.getFingerprint(), certificate.getCredential());
+            TRUST_ENGINES.put(spEntityId, trustEngine);
+        }
+        return trustEngine;
+    }
+
     public static boolean validateDeflateSignature(String queryString, String signature,
                                                    String sigAlg, X509Certificate certificate,
                                                    String inResponseTo, String acsUrl, String spEntityId)
             throws SAML2SSORequestValidationException {
 
+        return validateDeflateSignature(queryString, signature, sigAlg, new X509CredentialImpl(certificate),
+                                        inResponseTo, acsUrl, spEntityId);
+    }
+
+    public static boolean validateDeflateSignature(String queryString, String signature,
+                                                   String sigAlg, X509Credential credential,
+                                                   String inResponseTo, String acsUrl, String spEntityId)
+            throws SAML2SSORequestValidationException {
+
+        return validateDeflateSignature(QueryString.parse(queryString), signature, sigAlg,
+                                        new SPTrustEngine(spEntityId, null, credential), inResponseTo, acsUrl);
+    }
+
+    private static boolean validateDeflateSignature(QueryString queryString, String signature, String sigAlg,
+                                                    SPTrustEngine trustEngine, String inResponseTo, String acsUrl)
+            throws SAML2SSORequestValidationException {
+
         if (StringUtils.isBlank(signature)) {
             SAML2SSORequestValidationException ex =
                     new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
@@ -114,16 +156,21 @@ public class AuthnReqSigUtil {
             throw ex;
         }
 
-        CriteriaSet criteriaSet = buildCriteriaSet(spEntityId);
-
-        X509Credential credential = new X509CredentialImpl(certificate);
-        List<Credential> credentials = new ArrayList();
-        credentials.add(credential);
-        CollectionCredentialResolver credResolver = new CollectionCredentialResolver(credentials);
-        KeyInfoCredentialResolver kiResolver = SecurityHelper.buildBasicInlineKeyInfoResolver();
-        SignatureTrustEngine engine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+        if (StringUtils.isNotBlank(CryptoConfig.getInstance().getProviderName()) ||
+            !SignatureAlgorithms.isSupportedByXMLSecurity(sigAlg)) {
+            // The trusted key is known, so verify directly with the preferred provider, or with the JCA mapping of
+            // algorithms such as ECDSA-SHA256 that the XML Security library in use may not know.
+            try {
+                return SAML2AuthUtils.verify(trustEngine.credential.getPublicKey(), sigAlg, sigBytes, signedContent);
+            } catch (IdentityRuntimeException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Signature validation error.", e);
+                }
+                return false;
+            }
+        }
         try {
-            return engine.validate(sigBytes, signedContent, sigAlg, criteriaSet, null);
+            return trustEngine.engine.validate(sigBytes, signedContent, sigAlg, trustEngine.criteriaSet, null);
         } catch (SecurityException e) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Signature validation error.", e);
@@ -132,7 +179,7 @@ public class AuthnReqSigUtil {
         }
     }
 
-    protected static byte[] getSignedContent(String queryString, String inResponseTo, String acsUrl)
+    protected static byte[] getSignedContent(QueryString queryString, String inResponseTo, String acsUrl)
             throws SAML2SSORequestValidationException {
 
         // We need the raw non-URL-decoded query string param values for HTTP-Redirect DEFLATE simple signature
@@ -167,11 +214,21 @@ public class AuthnReqSigUtil {
     public static String buildSignedContentString(String queryString, String inResponseTo, String acsUrl)
             throws SAML2SSORequestValidationException {
 
+        return buildSignedContentString(QueryString.parse(queryString), inResponseTo, acsUrl);
+    }
+
+    /**
+     * Extract the raw request parameters from the parsed query string and build a string representation of
+     * the content that was signed.
+     */
+    public static String buildSignedContentString(QueryString queryString, String inResponseTo, String acsUrl)
+            throws SAML2SSORequestValidationException {
+
         StringBuilder builder = new StringBuilder();
 
         // One of these two is mandatory
-        if (!appendParameter(builder, queryString, "SAMLRequest") && !appendParameter(builder, queryString,
-                                                                                      "SAMLResponse")) {
+        if (!queryString.appendRawParameter(builder, "SAMLRequest") &&
+            !queryString.appendRawParameter(builder, "SAMLResponse")) {
             SAML2SSORequestValidationException ex =
                     new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
                                                            "Extract of SAMLRequest or SAMLResponse from query string " +
@@ -181,41 +238,13 @@ public class AuthnReqSigUtil {
             throw ex;
         }
         // This is optional
-        appendParameter(builder, queryString, "RelayState");
+        queryString.appendRawParameter(builder, "RelayState");
         // This is mandatory, but has already been checked in superclass
-        appendParameter(builder, queryString, "SigAlg");
+        queryString.appendRawParameter(builder, "SigAlg");
 
         return builder.toString();
     }
 
-    /**
-     * Find the raw query string parameter indicated and append it to the string
-     * builder.
-     * <p/>
-     * The appended value will be in the form 'paramName=paramValue' (minus the
-     * quotes).
-     *
-     * @param builder
-     *         string builder to which to append the parameter
-     * @param queryString
-     *         the URL query string containing parameters
-     * @param paramName
-     *         the name of the parameter to append
-     * @return true if parameter was found, false otherwise
-     */
-    private static boolean appendParameter(StringBuilder builder, String queryString,
-                                    String paramName) {
-        String rawParam = HTTPTransportUtils.getRawQueryStringParameter(queryString, paramName);
-        if (rawParam == null) {
-            return false;
-        }
-        if (builder.length() > 0) {
-            builder.append('&');
-        }
-        builder.append(rawParam);
-        return true;
-    }
-
     private static CriteriaSet buildCriteriaSet(String issuer) {
         CriteriaSet criteriaSet = new CriteriaSet();
         if (!DatatypeHelper.isEmpty(issuer)) {
@@ -229,6 +258,13 @@ public class AuthnReqSigUtil {
                                                String inResponseTo, String acsUrl)
             throws SAML2SSORequestValidationException, SAML2SSOServerException {
 
+        return validateXMLSignature(authnRequest, new X509CredentialImpl(certificate), inResponseTo, acsUrl);
+    }
+
+    public static boolean validateXMLSignature(AuthnRequest authnRequest, X509Credential credential,
+                                               String inResponseTo, String acsUrl)
+            throws SAML2SSORequestValidationException, SAML2SSOServerException {
+
         if (authnRequest.getSignature() == null) {
             SAML2SSORequestValidationException ex =
                     new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
@@ -238,7 +274,6 @@ public class AuthnReqSigUtil {
             throw ex;
         }
 
-        X509Credential credential = new X509CredentialImpl(certificate);
         boolean isSignatureValid = false;
         if (authnRequest.getSignature() != null) {
             try {
@@ -251,4 +286,28 @@ public class AuthnReqSigUtil {
         }
         return isSignatureValid;
     }
+
+    /**
+     * Signature trust engine and criteria for validating HTTP-Redirect signatures of a service provider. Neither is
+     * modified during validation, so they are shared by concurrent requests.
+     */
+    private static class SPTrustEngine {
+
+        private final String fingerprint;
+        private final X509Credential credential;
+        private final SignatureTrustEngine engine;
+        private final CriteriaSet criteriaSet;
+
+        private SPTrustEngine(String spEntityId, String fingerprint, X509Credential credential) {
+
+            this.fingerprint = fingerprint;
+            this.credential = credential;
+            List<Credential> credentials = new ArrayList();
+            credentials.add(credential);
+            CollectionCredentialResolver credResolver = new CollectionCredentialResolver(credentials);
+            KeyInfoCredentialResolver kiResolver = SecurityHelper.buildBasicInlineKeyInfoResolver();
+            this.engine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+            this.criteriaSet = buildCriteriaSet(spEntityId);
+        }
+    }
 }
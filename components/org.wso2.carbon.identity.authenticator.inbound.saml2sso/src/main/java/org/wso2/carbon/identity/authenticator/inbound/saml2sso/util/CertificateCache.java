@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.auth.saml2.common.X509CredentialImpl;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the service provider certificates configured for signature validation and assertion encryption, keyed by
+ * the Base64 encoded certificate. Decoding and parsing a certificate is done once per distinct certificate instead of
+ * once per request.
+ */
+public class CertificateCache {
+
+    private static Logger logger = LoggerFactory.getLogger(CertificateCache.class);
+
+    private static volatile CertificateCache instance = new CertificateCache();
+
+    private final Map<String, CachedCertificate> certificates = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private CertificateCache() {
+
+    }
+
+    public static CertificateCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the decoded certificate for the given Base64 encoded certificate.
+     *
+     * @param encodedCert Base64 encoded certificate
+     * @return decoded certificate with its credential and fingerprint
+     * @throws CertificateException if the certificate cannot be decoded
+     */
+    public CachedCertificate getCertificate(String encodedCert) throws CertificateException {
+
+        CachedCertificate cachedCertificate = certificates.get(encodedCert);
+        if (cachedCertificate != null) {
+            hitCount.incrementAndGet();
+            return cachedCertificate;
+        }
+        missCount.incrementAndGet();
+        cachedCertificate = new CachedCertificate((X509Certificate) Utils.decodeCertificate(encodedCert));
+        evictIfFull();
+        certificates.put(encodedCert, cachedCertificate);
+        return cachedCertificate;
+    }
+
+    private void evictIfFull() {
+
+        int maxSize = Config.getInstance().getCertificateCacheSize();
+        Iterator<String> iterator = certificates.keySet().iterator();
+        while (certificates.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public void clear() {
+        certificates.clear();
+    }
+
+    public int getSize() {
+        return certificates.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * A decoded certificate together with the credential built from it.
+     */
+    public static final class CachedCertificate {
+
+        private final X509Certificate certificate;
+        private final X509CredentialImpl credential;
+        private final String fingerprint;
+
+        private CachedCertificate(X509Certificate certificate) throws CertificateException {
+            this.certificate = certificate;
+            this.credential = new X509CredentialImpl(certificate);
+            this.fingerprint = computeFingerprint(certificate);
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+
+        public X509CredentialImpl getCredential() {
+            return credential;
+        }
+
+        /**
+         * Returns the hex encoded SHA-256 digest of the DER encoded certificate.
+         *
+         * @return certificate fingerprint
+         */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        private static String computeFingerprint(X509Certificate certificate) throws CertificateException {
+
+            byte[] digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+            } catch (NoSuchAlgorithmException e) {
+                logger.error("SHA-256 message digest is not available.", e);
+                throw new CertificateException("Error while computing certificate fingerprint.", e);
+            }
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A URL query string split into its parameters in a single pass. Only the offsets of each parameter are recorded, so
+ * a parameter is copied out of the query string only when it is asked for, either as it was received, which is
+ * needed to build the signature input of the HTTP-Redirect binding, or URL-decoded. When a parameter appears more than
+ * once the first occurrence is used.
+ */
+public class QueryString {
+
+    private static final QueryString EMPTY = new QueryString("", new int[0], 0);
+
+    // for each parameter, the start of its name, the index of its '=' or -1 if there is none, and its end
+    private static final int OFFSETS_PER_PARAMETER = 3;
+
+    private final String queryString;
+    private final int[] offsets;
+    private final int parameterCount;
+
+    private QueryString(String queryString, int[] offsets, int parameterCount) {
+
+        this.queryString = queryString;
+        this.offsets = offsets;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Splits the given query string into its parameters.
+     *
+     * @param queryString query string without the leading '?', may be null
+     * @return parsed query string
+     */
+    public static QueryString parse(String queryString) {
+
+        if (queryString == null || queryString.isEmpty()) {
+            return EMPTY;
+        }
+        int[] offsets = new int[4 * OFFSETS_PER_PARAMETER];
+        int parameterCount = 0;
+        int start = 0;
+        int separator = -1;
+        int length = queryString.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? queryString.charAt(i) : '&';
+            if (c == '=' && separator == -1) {
+                separator = i;
+            } else if (c == '&') {
+                if (i > start) {
+                    if ((parameterCount + 1) * OFFSETS_PER_PARAMETER > offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    int offset = parameterCount * OFFSETS_PER_PARAMETER;
+                    offsets[offset] = start;
+                    offsets[offset + 1] = separator;
+                    offsets[offset + 2] = i;
+                    parameterCount++;
+                }
+                start = i + 1;
+                separator = -1;
+            }
+        }
+        return new QueryString(queryString, offsets, parameterCount);
+    }
+
+    /**
+     * Returns the given parameter as it appears in the query string, in the form 'name=value'.
+     *
+     * @param name parameter name
+     * @return raw parameter, or null if there is no such parameter
+     */
+    public String getRawParameter(String name) {
+
+        int offset = indexOf(name);
+        if (offset < 0) {
+            return null;
+        }
+        return queryString.substring(offsets[offset], offsets[offset + 2]);
+    }
+
+    /**
+     * Appends the given parameter as it appears in the query string to the builder, in the form 'name=value',
+     * separated from any previous content by a '&amp;'.
+     *
+     * @param builder builder to append the parameter to
+     * @param name    parameter name
+     * @return true if the parameter was found, false otherwise
+     */
+    public boolean appendRawParameter(StringBuilder builder, String name) {
+
+        int offset = indexOf(name);
+        if (offset < 0) {
+            return false;
+        }
+        if (builder.length() > 0) {
+            builder.append('&');
+        }
+        builder.append(queryString, offsets[offset], offsets[offset + 2]);
+        return true;
+    }
+
+    /**
+     * Returns the URL-decoded value of the given parameter. The value is decoded as UTF-8 form data, i.e. '+' is
+     * decoded as a space.
+     *
+     * @param name parameter name
+     * @return decoded value, or null if there is no such parameter
+     * @throws IllegalArgumentException if the value has an invalid escape sequence
+     */
+    public String getParameter(String name) throws IllegalArgumentException {
+
+        int offset = indexOf(name);
+        if (offset < 0) {
+            return null;
+        }
+        if (offsets[offset + 1] < 0) {
+            return "";
+        }
+        return decode(offsets[offset + 1] + 1, offsets[offset + 2]);
+    }
+
+    private int indexOf(String name) {
+
+        for (int i = 0; i < parameterCount; i++) {
+            int offset = i * OFFSETS_PER_PARAMETER;
+            int nameEnd = offsets[offset + 1] < 0 ? offsets[offset + 2] : offsets[offset + 1];
+            if (nameEnd - offsets[offset] == name.length() &&
+                queryString.regionMatches(offsets[offset], name, 0, name.length())) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private String decode(int start, int end) {
+
+        int i = start;
+        while (i < end && queryString.charAt(i) != '%' && queryString.charAt(i) != '+') {
+            i++;
+        }
+        if (i == end) {
+            // nothing to decode, which is the common case for Base64 values that were not URL-encoded
+            return queryString.substring(start, end);
+        }
+
+        StringBuilder builder = new StringBuilder(end - start);
+        builder.append(queryString, start, i);
+        byte[] bytes = null;
+        while (i < end) {
+            char c = queryString.charAt(i);
+            if (c == '+') {
+                builder.append(' ');
+                i++;
+            } else if (c == '%') {
+                // a run of escapes is decoded together, since a UTF-8 character may span several of them
+                if (bytes == null) {
+                    bytes = new byte[(end - i) / 3];
+                }
+                int count = 0;
+                while (i < end && queryString.charAt(i) == '%') {
+                    if (i + 2 >= end) {
+                        throw new IllegalArgumentException("Incomplete escape sequence in query string.");
+                    }
+                    int high = Character.digit(queryString.charAt(i + 1), 16);
+                    int low = Character.digit(queryString.charAt(i + 2), 16);
+                    if (high < 0 || low < 0) {
+                        throw new IllegalArgumentException("Invalid escape sequence in query string.");
+                    }
+                    bytes[count++] = (byte) ((high << 4) + low);
+                    i += 3;
+                }
+                builder.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -26,6 +26,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Locale;
 
 /**
  * Utilities needed for SAML2 SSO Inbound Authenticator.
@@ -56,4 +57,55 @@ public class Utils {
             throw new CertificateException("Encoded certificate is empty: " + encodedCert);
         }
     }
+
+    /**
+     * Normalizes a URL for comparison. The scheme and host are case-insensitive, so they are lower-cased, and the
+     * default port of the HTTP and HTTPS schemes is removed. The rest of the URL is case-sensitive and is kept as it
+     * is. A value that is not an absolute URL is returned unchanged.
+     *
+     * @param url URL to normalize
+     * @return normalized URL
+     */
+    public static String normalizeURL(String url) {
+
+        if (url == null) {
+            return null;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0) {
+            return url;
+        }
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = url.length();
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ENGLISH);
+        String authority = url.substring(authorityStart, authorityEnd);
+
+        // user info is case-sensitive, only the host is folded
+        int hostStart = authority.lastIndexOf('@') + 1;
+        int portStart = authority.lastIndexOf(':');
+        if (portStart < hostStart || authority.indexOf(']', portStart) >= 0) {
+            portStart = -1;
+        }
+        String host = authority.substring(hostStart, portStart < 0 ? authority.length() : portStart)
+                .toLowerCase(Locale.ENGLISH);
+        String port = portStart < 0 ? null : authority.substring(portStart + 1);
+        if (port != null && (port.isEmpty() || ("http".equals(scheme) && "80".equals(port)) ||
+                             ("https".equals(scheme) && "443".equals(port)))) {
+            port = null;
+        }
+
+        StringBuilder normalizedURL = new StringBuilder(url.length());
+        normalizedURL.append(scheme).append("://").append(authority, 0, hostStart).append(host);
+        if (port != null) {
+            normalizedURL.append(':').append(port);
+        }
+        return normalizedURL.append(url, authorityEnd, url.length()).toString();
+    }
 }
@@ -71,7 +71,8 @@ public class IdPInitValidator extends SAML2SSOValidator {
 
         org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig validatorConfig =
                 getValidatorConfig(authenticationContext);
-        RequestValidatorConfig requestValidatorConfig = new RequestValidatorConfig(validatorConfig);
+        RequestValidatorConfig requestValidatorConfig =
+                RequestValidatorConfig.getConfig(authenticationContext.getServiceProviderId(), validatorConfig);
         if (logger.isDebugEnabled()) {
             logger.debug(requestValidatorConfig.toString());
         }
@@ -91,7 +92,7 @@ public class IdPInitValidator extends SAML2SSOValidator {
 
         String acs = ((IdPInitRequest) saml2SSOContext.getRequest()).getAcs();
         if (StringUtils.isNotBlank(acs)) {
-            if (!requestValidatorConfig.getAssertionConsumerUrlList().contains(acs)) {
+            if (!requestValidatorConfig.isValidAssertionConsumerUrl(acs)) {
                 SAML2SSORequestValidationException ex =
                         new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
                                                                "Invalid Assertion Consumer Service URL value '" + acs +
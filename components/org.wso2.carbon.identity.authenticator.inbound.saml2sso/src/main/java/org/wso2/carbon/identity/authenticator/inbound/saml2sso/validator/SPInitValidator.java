@@ -25,6 +25,7 @@ import org.opensaml.saml2.core.Issuer;
 import org.opensaml.saml2.core.NameID;
 import org.opensaml.saml2.core.StatusCode;
 import org.opensaml.saml2.core.Subject;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.bean.SAML2SSOContext;
@@ -32,8 +33,11 @@ import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.Invalid
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORequestValidationException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORuntimeException;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.internal.SAML2InboundAuthDataHolder;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.RequestValidatorConfig;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.replay.ReplayCache;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.request.SAMLRequestSummary;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.request.SPInitRequest;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.AuthnReqSigUtil;
 import org.wso2.carbon.identity.gateway.api.exception.GatewayClientException;
@@ -41,7 +45,6 @@ import org.wso2.carbon.identity.gateway.context.AuthenticationContext;
 import org.wso2.carbon.identity.gateway.exception.InvalidServiceProviderIdException;
 import org.wso2.carbon.identity.gateway.handler.GatewayHandlerResponse;
 
-import java.util.List;
 
 /**
  * SP Initiated SAML2 SSO Inbound Request Validator.
@@ -71,32 +74,32 @@ public class SPInitValidator extends SAML2SSOValidator {
 
         SAML2SSOContext saml2SSOContext = super.createInboundMessageContext(authenticationContext);
         SPInitRequest spInitRequest = ((SPInitRequest) saml2SSOContext.getRequest());
-        AuthnRequest authnRequest = spInitRequest.getAuthnRequest();
-        Issuer issuer = authnRequest.getIssuer();
-        if (issuer == null || (StringUtils.isBlank(issuer.getValue()) &&
-                               StringUtils.isBlank(issuer.getSPProvidedID()))) {
+        // the service provider is resolved from the fields read while scanning the request, without unmarshalling it
+        SAMLRequestSummary samlRequestSummary = spInitRequest.getSAMLRequestSummary();
+        String issuer = samlRequestSummary.getIssuer();
+        if (StringUtils.isBlank(issuer) && StringUtils.isBlank(samlRequestSummary.getIssuerSPProvidedId())) {
             InvalidSPEntityIdException ex =
                     new InvalidSPEntityIdException(StatusCode.REQUESTER_URI, "Cannot find issuer.");
-            ex.setInResponseTo(authnRequest.getID());
+            ex.setInResponseTo(samlRequestSummary.getId());
             ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
             throw ex;
         }
         try {
-            if (StringUtils.isNotBlank(issuer.getValue())) {
-                authenticationContext.setServiceProviderId(issuer.getValue());
-            } else if (StringUtils.isNotBlank(issuer.getSPProvidedID())) {
-                authenticationContext.setServiceProviderId(issuer.getValue());
+            if (StringUtils.isNotBlank(issuer)) {
+                authenticationContext.setServiceProviderId(issuer);
+            } else if (StringUtils.isNotBlank(samlRequestSummary.getIssuerSPProvidedId())) {
+                authenticationContext.setServiceProviderId(samlRequestSummary.getIssuerSPProvidedId());
             }
         } catch (InvalidServiceProviderIdException e) {
             InvalidSPEntityIdException ex =
                     new InvalidSPEntityIdException(StatusCode.REQUESTER_URI, e.getMessage());
-            ex.setInResponseTo(authnRequest.getID());
+            ex.setInResponseTo(samlRequestSummary.getId());
             ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
             throw ex;
         } catch (GatewayClientException e) {
             SAML2SSORequestValidationException ex =
                     new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI, e.getMessage());
-            ex.setInResponseTo(authnRequest.getID());
+            ex.setInResponseTo(samlRequestSummary.getId());
             ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
             throw ex;
         }
@@ -104,11 +107,17 @@ public class SPInitValidator extends SAML2SSOValidator {
 
         org.wso2.carbon.identity.gateway.common.model.sp.RequestValidatorConfig validatorConfig =
                 getValidatorConfig(authenticationContext);
-        RequestValidatorConfig requestValidatorConfig = new RequestValidatorConfig(validatorConfig);
+        RequestValidatorConfig requestValidatorConfig =
+                RequestValidatorConfig.getConfig(authenticationContext.getServiceProviderId(), validatorConfig);
         if (logger.isDebugEnabled()) {
             logger.debug(requestValidatorConfig.toString());
         }
         saml2SSOContext.setRequestValidatorConfig(requestValidatorConfig);
+
+        saml2SSOContext.setSPEntityId(authenticationContext.getServiceProviderId());
+        saml2SSOContext.setId(samlRequestSummary.getId());
+        validateSAMLRequestSummary(samlRequestSummary, spInitRequest.isRedirect(), saml2SSOContext,
+                                   requestValidatorConfig);
         return saml2SSOContext;
     }
 
@@ -119,9 +128,7 @@ public class SPInitValidator extends SAML2SSOValidator {
         SAML2SSOContext saml2SSOContext = createInboundMessageContext(authenticationContext);
         SPInitRequest spInitRequest = (SPInitRequest) saml2SSOContext.getRequest();
         AuthnRequest authnRequest = spInitRequest.getAuthnRequest();
-
-        saml2SSOContext.setSPEntityId(authenticationContext.getServiceProviderId());
-        saml2SSOContext.setId((authnRequest).getID());
+        validateSummaryMatches(spInitRequest.getSAMLRequestSummary(), authnRequest, saml2SSOContext);
 
         try {
             validateAuthnRequest(authnRequest, saml2SSOContext);
@@ -137,14 +144,89 @@ public class SPInitValidator extends SAML2SSOValidator {
 
     }
 
+    /**
+     * Validates the ACS URL, and the destination and presence of a signature if requests must be signed, using the
+     * fields read while scanning the request. A request failing these checks is rejected before it is unmarshalled.
+     *
+     * @param samlRequestSummary     summary of the AuthnRequest
+     * @param redirect               whether the request was received over the HTTP-Redirect binding
+     * @param saml2SSOContext        SAML2 SSO context of the request
+     * @param requestValidatorConfig request validator config of the service provider
+     * @throws SAML2SSORequestValidationException if a check fails
+     */
+    protected void validateSAMLRequestSummary(SAMLRequestSummary samlRequestSummary, boolean redirect,
+                                              SAML2SSOContext saml2SSOContext,
+                                              RequestValidatorConfig requestValidatorConfig)
+            throws SAML2SSORequestValidationException {
+
+        validateACS(samlRequestSummary.getAssertionConsumerServiceURL(), saml2SSOContext.getId(), saml2SSOContext,
+                    requestValidatorConfig);
+
+        if (requestValidatorConfig.isRequireSignatureValidation()) {
+
+            String destination = samlRequestSummary.getDestination();
+            if (destination == null || !Config.getInstance().isValidDestinationUrl(destination)) {
+                String msg = "Destination validation for AuthnRequest failed. " + "Received: [" +
+                             destination + "]." + " Expected one in the list: [" + StringUtils
+                                     .join(Config.getInstance().getDestinationUrls(), ',') + "]";
+                SAML2SSORequestValidationException ex =
+                        new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI, msg);
+                ex.setInResponseTo(saml2SSOContext.getId());
+                ex.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
+                throw ex;
+            }
+            saml2SSOContext.setDestination(destination);
+
+            if (!redirect && !samlRequestSummary.isSigned()) {
+                SAML2SSORequestValidationException ex =
+                        new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
+                                                               "Cannot find Signature element in AuthnRequest.");
+                ex.setInResponseTo(saml2SSOContext.getId());
+                ex.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Validates that the unmarshalled AuthnRequest has the same Issuer, ID, ACS URL and Destination as the summary the
+     * request was routed and validated by. The scan and the unmarshaller read an ambiguous request differently, e.g.
+     * one with several Issuer elements or with namespace qualified attributes, and such a request is rejected.
+     *
+     * @param samlRequestSummary summary of the AuthnRequest
+     * @param authnReq           unmarshalled AuthnRequest
+     * @param saml2SSOContext    SAML2 SSO context of the request
+     * @throws SAML2SSORequestValidationException if the AuthnRequest does not match the summary
+     */
+    protected void validateSummaryMatches(SAMLRequestSummary samlRequestSummary, AuthnRequest authnReq,
+                                          SAML2SSOContext saml2SSOContext)
+            throws SAML2SSORequestValidationException {
+
+        Issuer issuer = authnReq.getIssuer();
+        if (issuer == null ||
+            !StringUtils.equals(samlRequestSummary.getIssuer(), issuer.getValue()) ||
+            !StringUtils.equals(samlRequestSummary.getIssuerSPProvidedId(), issuer.getSPProvidedID()) ||
+            !StringUtils.equals(samlRequestSummary.getId(), authnReq.getID()) ||
+            !StringUtils.equals(samlRequestSummary.getAssertionConsumerServiceURL(),
+                                authnReq.getAssertionConsumerServiceURL()) ||
+            !StringUtils.equals(samlRequestSummary.getDestination(), authnReq.getDestination())) {
+            SAML2SSORequestValidationException ex =
+                    new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
+                                                           "AuthnRequest has ambiguous Issuer, ID, " +
+                                                           "AssertionConsumerServiceURL or Destination values.");
+            ex.setInResponseTo(saml2SSOContext.getId());
+            // the ACS URL the request was routed by may not be the one the request means
+            ex.setAcsUrl(Config.getInstance().getErrorPageUrl());
+            throw ex;
+        }
+    }
+
     protected void validateAuthnRequest(AuthnRequest authnReq, SAML2SSOContext saml2SSOContext)
             throws SAML2SSORequestValidationException, SAML2SSOServerException {
 
         String appName = saml2SSOContext.getName();
 
         RequestValidatorConfig requestValidatorConfig = saml2SSOContext.getRequestValidatorConfig();
-        validateACS(authnReq.getAssertionConsumerServiceURL(), saml2SSOContext.getId(), saml2SSOContext,
-                    requestValidatorConfig);
 
         if (!(SAMLVersion.VERSION_20.equals(authnReq.getVersion()))) {
             SAML2SSORequestValidationException ex =
@@ -196,22 +278,20 @@ public class SPInitValidator extends SAML2SSOValidator {
             saml2SSOContext.setAttributeConsumingServiceIndex(index);
         }
 
-        // Validate the assertion consumer url, only if request is not signed.
+        // Validate the assertion consumer url, only if request is not signed. The destination of a signed request
+        // has already been validated in createInboundMessageContext.
         if (requestValidatorConfig.isRequireSignatureValidation()) {
 
-            List<String> idpUrlSet = Config.getInstance().getDestinationUrls();
-
-            if (authnReq.getDestination() == null || !idpUrlSet.contains(authnReq.getDestination())) {
-                String msg = "Destination validation for AuthnRequest failed. " + "Received: [" +
-                             saml2SSOContext.getDestination() + "]." + " Expected one in the list: [" + StringUtils
-                                     .join(idpUrlSet, ',') + "]";
-                SAML2SSORequestValidationException ex =
-                        new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI, msg);
-                ex.setInResponseTo(saml2SSOContext.getId());
-                ex.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
-                throw ex;
+            // a replayed request is rejected before its signature is verified again
+            boolean replayDetectionEnabled = Config.getInstance().isReplayDetectionEnabled();
+            ReplayCache replayCache = SAML2InboundAuthDataHolder.getInstance().getReplayCache();
+            long replayExpiry = 0;
+            if (replayDetectionEnabled) {
+                replayExpiry = validateIssueInstant(authnReq, saml2SSOContext);
+                if (replayCache.isReplay(saml2SSOContext.getSPEntityId(), authnReq.getID())) {
+                    throw buildReplayException(saml2SSOContext);
+                }
             }
-            saml2SSOContext.setDestination(authnReq.getDestination());
 
             boolean isSignatureValid = AuthnReqSigUtil.validateAuthnRequestSignature(authnReq,
                                                                                      saml2SSOContext,
@@ -226,11 +306,16 @@ public class SPInitValidator extends SAML2SSOValidator {
                 throw ex;
             }
 
+            // only requests with a valid signature are recorded, so that forged requests cannot fill the cache
+            if (replayDetectionEnabled &&
+                !replayCache.add(saml2SSOContext.getSPEntityId(), authnReq.getID(), replayExpiry)) {
+                throw buildReplayException(saml2SSOContext);
+            }
+
         } else {
 
             String acsUrl = saml2SSOContext.getAssertionConsumerURL();
-            if (StringUtils.isBlank(acsUrl) || !requestValidatorConfig.getAssertionConsumerUrlList()
-                    .contains(acsUrl)) {
+            if (StringUtils.isBlank(acsUrl) || !requestValidatorConfig.isValidAssertionConsumerUrl(acsUrl)) {
                 String message = "Invalid Assertion Consumer URL value '" + acsUrl + "' in the AuthnRequest " +
                                  "message from '" + appName;
                 SAML2SSORequestValidationException ex =
@@ -242,11 +327,55 @@ public class SPInitValidator extends SAML2SSOValidator {
         }
     }
 
+    /**
+     * Validates that a signed AuthnRequest has an ID and was issued within the replay window, so that it is still
+     * recorded in the replay cache if it has been received before.
+     *
+     * @param authnReq        AuthnRequest
+     * @param saml2SSOContext SAML2 SSO context of the request
+     * @return time in milliseconds after which the request is no longer accepted
+     * @throws SAML2SSORequestValidationException if the request has no ID or is outside the replay window
+     */
+    protected long validateIssueInstant(AuthnRequest authnReq, SAML2SSOContext saml2SSOContext)
+            throws SAML2SSORequestValidationException {
+
+        String message = null;
+        long replayWindow = Config.getInstance().getReplayWindow();
+        DateTime issueInstant = authnReq.getIssueInstant();
+        long now = System.currentTimeMillis();
+        if (StringUtils.isBlank(authnReq.getID())) {
+            message = "AuthnRequest does not have an ID.";
+        } else if (issueInstant == null) {
+            message = "AuthnRequest does not have an IssueInstant.";
+        } else if (issueInstant.getMillis() + replayWindow < now || issueInstant.getMillis() - replayWindow > now) {
+            message = "AuthnRequest IssueInstant " + issueInstant + " is not within " + replayWindow +
+                      "ms of the current time.";
+        }
+        if (message != null) {
+            SAML2SSORequestValidationException ex =
+                    new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI, message);
+            ex.setInResponseTo(saml2SSOContext.getId());
+            ex.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
+            throw ex;
+        }
+        return issueInstant.getMillis() + replayWindow;
+    }
+
+    private SAML2SSORequestValidationException buildReplayException(SAML2SSOContext saml2SSOContext) {
+
+        SAML2SSORequestValidationException ex =
+                new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI, "AuthnRequest " +
+                                                       saml2SSOContext.getId() + " has already been received.");
+        ex.setInResponseTo(saml2SSOContext.getId());
+        ex.setAcsUrl(saml2SSOContext.getAssertionConsumerURL());
+        return ex;
+    }
+
     protected void validateACS(String requestedACSUrl, String inResponseTo,
                                SAML2SSOContext saml2SSOContext, RequestValidatorConfig requestValidatorConfig)
             throws SAML2SSORequestValidationException {
 
-        if (!requestValidatorConfig.getAssertionConsumerUrlList().contains(requestedACSUrl)) {
+        if (!requestValidatorConfig.isValidAssertionConsumerUrl(requestedACSUrl)) {
             SAML2SSORequestValidationException ex =
                     new SAML2SSORequestValidationException(StatusCode.REQUESTER_URI,
                                                            "Invalid Assertion Consumer Service URL in the " +
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.test;
+
+import com.google.common.net.HttpHeaders;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.xml.encryption.EncryptedKey;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.CoreOptions;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerSuite;
+import org.ops4j.pax.exam.testng.listener.PaxExam;
+import org.osgi.framework.BundleContext;
+import org.testng.Assert;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.Config;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.response.EncryptionKeyCache;
+import org.wso2.carbon.identity.gateway.common.model.sp.ServiceProviderConfig;
+import org.wso2.carbon.kernel.utils.CarbonServerInfo;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+
+/**
+ * Tests for assertion encryption with the configurable data and key transport algorithms, with and without reuse of
+ * the data encryption key.
+ */
+@Listeners(PaxExam.class)
+@ExamReactorStrategy(PerSuite.class)
+public class AssertionEncryptionTests {
+
+    private static final String[] DATA_ENCRYPTION_ALGORITHMS = {
+            SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES128_CBC,
+            SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC,
+            SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES128_GCM,
+            SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_GCM
+    };
+
+    private static final String[] KEY_TRANSPORT_ALGORITHMS = {
+            SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5,
+            SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_OAEP_MGF1P
+    };
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    private CarbonServerInfo carbonServerInfo;
+
+    @Configuration
+    public Option[] createConfiguration() {
+
+        List<Option> optionList = OSGiTestUtils.getDefaultSecurityPAXOptions();
+
+        optionList.add(CoreOptions.systemProperty("java.security.auth.login.config")
+                .value(Paths.get(OSGiTestUtils.getCarbonHome(), "conf", "security", "carbon-jaas.config")
+                        .toString()));
+
+        return optionList.toArray(new Option[optionList.size()]);
+    }
+
+    /**
+     * Test that the assertion decrypts with the SP key for every data and key transport algorithm, with a new data
+     * encryption key for every response.
+     */
+    @Test
+    public void testEncryptionAlgorithms() {
+        for (String dataEncryptionAlgorithm : DATA_ENCRYPTION_ALGORITHMS) {
+            for (String keyTransportAlgorithm : KEY_TRANSPORT_ALGORITHMS) {
+                testEncryption(dataEncryptionAlgorithm, keyTransportAlgorithm, false);
+            }
+        }
+    }
+
+    /**
+     * Test that the assertion decrypts with the SP key for every data and key transport algorithm, with the data
+     * encryption key reused across responses.
+     */
+    @Test
+    public void testEncryptionAlgorithmsWithKeyReuse() {
+        EncryptionKeyCache.getInstance().clear();
+        for (String dataEncryptionAlgorithm : DATA_ENCRYPTION_ALGORITHMS) {
+            for (String keyTransportAlgorithm : KEY_TRANSPORT_ALGORITHMS) {
+                testEncryption(dataEncryptionAlgorithm, keyTransportAlgorithm, true);
+            }
+        }
+    }
+
+    /**
+     * Test that a reused data encryption key is replaced once it has been used for the maximum number of assertions.
+     */
+    @Test
+    public void testEncryptionKeyMaxUses() {
+        int originalMaxUses = Config.getInstance().getEncryptionKeyMaxUses();
+        Config.getInstance().setEncryptionKeyMaxUses(2);
+        EncryptionKeyCache.getInstance().clear();
+        try {
+            String firstKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_GCM,
+                    SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_OAEP_MGF1P, true);
+            String secondKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_GCM,
+                    SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_OAEP_MGF1P, true);
+            String thirdKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_GCM,
+                    SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_OAEP_MGF1P, true);
+            Assert.assertEquals(secondKey, firstKey);
+            Assert.assertNotEquals(thirdKey, firstKey);
+        } finally {
+            Config.getInstance().setEncryptionKeyMaxUses(originalMaxUses);
+            EncryptionKeyCache.getInstance().clear();
+        }
+    }
+
+    /**
+     * Test that a reused data encryption key is replaced once its lifetime has passed.
+     */
+    @Test
+    public void testEncryptionKeyLifetime() {
+        long originalLifetime = Config.getInstance().getEncryptionKeyLifetime();
+        Config.getInstance().setEncryptionKeyLifetime(50);
+        EncryptionKeyCache.getInstance().clear();
+        try {
+            String firstKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC,
+                    SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5, true);
+            Thread.sleep(100);
+            String secondKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC,
+                    SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5, true);
+            Assert.assertNotEquals(secondKey, firstKey);
+        } catch (InterruptedException e) {
+            Assert.fail("Interrupted while running testEncryptionKeyLifetime test case", e);
+        } finally {
+            Config.getInstance().setEncryptionKeyLifetime(originalLifetime);
+            EncryptionKeyCache.getInstance().clear();
+        }
+    }
+
+    /**
+     * Test that a data encryption key is not reused unless the service provider opts in.
+     */
+    @Test
+    public void testEncryptionWithoutKeyReuse() {
+        String firstKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC,
+                SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5, false);
+        String secondKey = testEncryption(SAML2AuthConstants.XML.EncryptionAlgorithmURI.AES256_CBC,
+                SAML2AuthConstants.XML.KeyTransportAlgorithmURI.RSA_1_5, false);
+        Assert.assertNotEquals(secondKey, firstKey);
+    }
+
+    /**
+     * Runs a SP initiated SSO flow with assertion encryption configured as given, and asserts that the assertion
+     * decrypts with the SP key.
+     *
+     * @return the encrypted data encryption key of the assertion
+     */
+    private String testEncryption(String dataEncryptionAlgorithm, String keyTransportAlgorithm,
+                                  boolean encryptionKeyReuse) {
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        Properties originalResponseBuilderConfigs = serviceProviderConfig.getResponseBuildingConfig()
+                .getResponseBuilderConfigs().get(0).getProperties();
+        Properties newResponseBuilderConfigs = (Properties) originalResponseBuilderConfigs.clone();
+        newResponseBuilderConfigs.put(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_ENCRYPTED, "true");
+        newResponseBuilderConfigs.put(SAML2AuthConstants.Config.Name.ASSERTION_ENCRYPTION_ALGO,
+                dataEncryptionAlgorithm);
+        newResponseBuilderConfigs.put(SAML2AuthConstants.Config.Name.KEY_ENCRYPTION_ALGO, keyTransportAlgorithm);
+        newResponseBuilderConfigs.put(SAML2AuthConstants.Config.Name.ENCRYPTION_KEY_REUSE,
+                String.valueOf(encryptionKeyReuse));
+        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).setProperties
+                (newResponseBuilderConfigs);
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.RELAY_STATE));
+
+            String relayState = locationHeader.split(TestConstants.RELAY_STATE + "=")[1];
+            relayState = relayState.split(TestConstants.QUERY_PARAM_SEPARATOR)[0];
+
+            urlConnection = TestUtils.request
+                    (TestConstants.GATEWAY_ENDPOINT + "?" + TestConstants.RELAY_STATE + "=" + relayState +
+                            "&" + TestConstants.ASSERTION + "=" +
+                            TestConstants.AUTHENTICATED_USER_NAME, HttpMethod.GET, false);
+            String response = TestUtils.getContent(urlConnection);
+            String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+
+            Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+            Assert.assertEquals(samlResponseObject.getAssertions().size(), 0);
+            Assert.assertEquals(samlResponseObject.getEncryptedAssertions().size(), 1);
+            EncryptedAssertion encryptedAssertion = samlResponseObject.getEncryptedAssertions().get(0);
+            Assert.assertEquals(encryptedAssertion.getEncryptedData().getEncryptionMethod().getAlgorithm(),
+                    dataEncryptionAlgorithm);
+            EncryptedKey encryptedKey = encryptedAssertion.getEncryptedData().getKeyInfo().getEncryptedKeys().get(0);
+            Assert.assertEquals(encryptedKey.getEncryptionMethod().getAlgorithm(), keyTransportAlgorithm);
+
+            Assertion assertion = TestUtils.decryptAssertion(samlResponseObject);
+            Assert.assertNotNull(assertion, "Assertion encrypted with " + dataEncryptionAlgorithm + " and " +
+                    keyTransportAlgorithm + " does not decrypt");
+            Assert.assertEquals(assertion.getSubject().getNameID().getValue(), TestConstants.AUTHENTICATED_USER_NAME);
+            return encryptedKey.getCipherData().getCipherValue().getValue();
+        } catch (IOException e) {
+            Assert.fail("Error while running testEncryption test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building response object", e);
+        } finally {
+            serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).setProperties
+                    (originalResponseBuilderConfigs);
+        }
+        return null;
+    }
+}
@@ -100,6 +100,7 @@ public class AudienceRestrictionTests {
 
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .put(SAML2AuthConstants.Config.Name.REQUESTED_AUDIENCES, restrictedAudiences);
+            TestUtils.invalidateSAML2Configs();
 
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
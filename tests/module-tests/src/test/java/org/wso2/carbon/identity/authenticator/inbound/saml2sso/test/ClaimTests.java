@@ -99,6 +99,7 @@ public class ClaimTests {
                     .AUTHN_RESPONSE_ENCRYPTED, "true");
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .put(SAML2AuthConstants.Config.Name.IDP_INIT_SSO_ENABLED, "true");
+            TestUtils.invalidateSAML2Configs();
             HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
                     + "?" + TestConstants.SP_ENTITY_ID + "=" + TestConstants
                     .SAMPLE_ISSUER_NAME, HttpMethod.GET, false);
@@ -156,6 +157,7 @@ public class ClaimTests {
                     .remove(SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .remove(SAML2AuthConstants.Config.Name.ATTRIBUTE_CONSUMING_SERVICE_INDEX);
+            TestUtils.invalidateSAML2Configs();
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
             String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
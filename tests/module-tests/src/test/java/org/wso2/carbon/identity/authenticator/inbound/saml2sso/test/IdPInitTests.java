@@ -232,6 +232,7 @@ public class IdPInitTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.IDP_INIT_SSO_ENABLED, "false");
+        TestUtils.invalidateSAML2Configs();
         try {
             HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
                                                                 + "?" + TestConstants.SP_ENTITY_ID + "=" + TestConstants
@@ -251,6 +252,7 @@ public class IdPInitTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.IDP_INIT_SSO_ENABLED, "true");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -97,10 +97,12 @@ public class NameIDFormatTests {
                 .getProperty(SAML2AuthConstants.Config.Name.NAME_ID_FORMAT);
         serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                 .remove(SAML2AuthConstants.Config.Name.NAME_ID_FORMAT);
+        TestUtils.invalidateSAML2Configs();
 
         if (StringUtils.isNotEmpty(inputNameId)) {
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .put(SAML2AuthConstants.Config.Name.NAME_ID_FORMAT, inputNameId);
+            TestUtils.invalidateSAML2Configs();
         } else {
             inputNameId = originalNameIDFormat;
         }
@@ -145,6 +147,7 @@ public class NameIDFormatTests {
         } finally {
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .put(SAML2AuthConstants.Config.Name.NAME_ID_FORMAT, originalNameIDFormat);
+            TestUtils.invalidateSAML2Configs();
 
 
         }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.test;
+
+import org.opensaml.ws.transport.http.HTTPTransportUtils;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.CoreOptions;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerSuite;
+import org.ops4j.pax.exam.testng.listener.PaxExam;
+import org.testng.Assert;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSORequestValidationException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.AuthnReqSigUtil;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.util.QueryString;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Tests for parsing and decoding query strings, and for building the signature input of the HTTP-Redirect binding
+ * from them.
+ */
+@Listeners(PaxExam.class)
+@ExamReactorStrategy(PerSuite.class)
+public class QueryStringTests {
+
+    @Configuration
+    public Option[] createConfiguration() {
+
+        List<Option> optionList = OSGiTestUtils.getDefaultSecurityPAXOptions();
+
+        optionList.add(CoreOptions.systemProperty("java.security.auth.login.config")
+                .value(Paths.get(OSGiTestUtils.getCarbonHome(), "conf", "security", "carbon-jaas.config")
+                        .toString()));
+
+        return optionList.toArray(new Option[optionList.size()]);
+    }
+
+    @Test
+    public void testDuplicateParameter() {
+        QueryString queryString = QueryString.parse("a=1&b=2&a=3");
+        Assert.assertEquals(queryString.getParameter("a"), "1");
+        Assert.assertEquals(queryString.getRawParameter("a"), "a=1");
+        Assert.assertEquals(queryString.getParameter("b"), "2");
+    }
+
+    @Test
+    public void testParameterWithoutValueSeparator() {
+        QueryString queryString = QueryString.parse("a&b=2");
+        Assert.assertEquals(queryString.getParameter("a"), "");
+        Assert.assertEquals(queryString.getRawParameter("a"), "a");
+        Assert.assertEquals(queryString.getParameter("b"), "2");
+    }
+
+    @Test
+    public void testEmptyValue() {
+        QueryString queryString = QueryString.parse("a=&b=2");
+        Assert.assertEquals(queryString.getParameter("a"), "");
+        Assert.assertEquals(queryString.getRawParameter("a"), "a=");
+        Assert.assertEquals(queryString.getParameter("b"), "2");
+    }
+
+    @Test
+    public void testMissingParameter() {
+        QueryString queryString = QueryString.parse("ab=1&&=2");
+        Assert.assertNull(queryString.getParameter("a"));
+        Assert.assertNull(queryString.getRawParameter("a"));
+        Assert.assertFalse(queryString.appendRawParameter(new StringBuilder(), "a"));
+        Assert.assertNull(QueryString.parse(null).getParameter("a"));
+        Assert.assertNull(QueryString.parse("").getParameter("a"));
+    }
+
+    @Test
+    public void testPlusDecodedAsSpace() {
+        QueryString queryString = QueryString.parse("a=b+c%2Bd");
+        Assert.assertEquals(queryString.getParameter("a"), "b c+d");
+        Assert.assertEquals(queryString.getRawParameter("a"), "a=b+c%2Bd");
+    }
+
+    @Test
+    public void testMultiByteEscapes() {
+        // U+00E9 is two bytes, U+20AC three bytes and U+1F600 four bytes in UTF-8
+        QueryString queryString = QueryString.parse("a=caf%C3%A9+%E2%82%AC%e2%82%ac&b=%F0%9F%98%80");
+        Assert.assertEquals(queryString.getParameter("a"), "caf\u00e9 \u20ac\u20ac");
+        Assert.assertEquals(queryString.getParameter("b"), "\ud83d\ude00");
+    }
+
+    @Test
+    public void testTruncatedEscape() {
+        assertInvalidEscape("a=%");
+        assertInvalidEscape("a=%4");
+        assertInvalidEscape("a=b%4&c=d");
+    }
+
+    @Test
+    public void testInvalidEscape() {
+        assertInvalidEscape("a=%G1");
+        assertInvalidEscape("a=%1G");
+        assertInvalidEscape("a=%%41");
+    }
+
+    /**
+     * Test that the signature input of the HTTP-Redirect binding, which is built from the raw parameters, is the one
+     * built with OpenSAML's HTTPTransportUtils, which was used before.
+     */
+    @Test
+    public void testSignatureInputMatchesHTTPTransportUtils() {
+        String[] queryStrings = {
+                "SAMLRequest=fZJBT%2BMwEIX%2FiuV7YydQVrKaoi4IbSUWIhr2wM110nSQ4wkep7D%2FfpN0q2UP9Pr8vpl5b" +
+                        "7y8%2FugsO7qeAH3J00Ry5rzBGnxb8ufqbnbJrVFdS7S0ru5ys%3D&RelayState=rs%20a%2Bb&SigAlg=" +
+                        "http%3A%2F%2Fwww.w3.org%2F2001%2F04%2Fxmldsig-more%23rsa-sha256&Signature=c2lnbmF0dXJl",
+                "SigAlg=http%3A%2F%2Fwww.w3.org%2F2000%2F09%2Fxmldsig%23rsa-sha1&SAMLRequest=abc%2B%2F%3D" +
+                        "&Signature=c2ln",
+                "SAMLRequest=first&SAMLRequest=second&RelayState=&SigAlg=alg",
+                "foo=bar&SAMLResponse=resp+onse&RelayState=x%26y&SigAlg=alg&xSigAlg=other"
+        };
+        for (String queryString : queryStrings) {
+            try {
+                Assert.assertEquals(AuthnReqSigUtil.buildSignedContentString(queryString, null, null),
+                        buildBaselineSignatureInput(queryString), queryString);
+            } catch (SAML2SSORequestValidationException e) {
+                Assert.fail("Error while building the signature input of '" + queryString + "'", e);
+            }
+        }
+    }
+
+    private void assertInvalidEscape(String queryString) {
+        try {
+            QueryString.parse(queryString).getParameter("a");
+            Assert.fail("Invalid escape in '" + queryString + "' was decoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String buildBaselineSignatureInput(String queryString) {
+        StringBuilder builder = new StringBuilder();
+        if (!appendBaselineParameter(builder, queryString, SAML2AuthConstants.SAML_REQUEST)) {
+            appendBaselineParameter(builder, queryString, SAML2AuthConstants.SAML_RESPONSE);
+        }
+        appendBaselineParameter(builder, queryString, SAML2AuthConstants.RELAY_STATE);
+        appendBaselineParameter(builder, queryString, SAML2AuthConstants.SIG_ALG);
+        return builder.toString();
+    }
+
+    private static boolean appendBaselineParameter(StringBuilder builder, String queryString, String name) {
+        String rawParameter = HTTPTransportUtils.getRawQueryStringParameter(queryString, name);
+        if (rawParameter == null) {
+            return false;
+        }
+        if (builder.length() > 0) {
+            builder.append('&');
+        }
+        builder.append(rawParameter);
+        return true;
+    }
+}
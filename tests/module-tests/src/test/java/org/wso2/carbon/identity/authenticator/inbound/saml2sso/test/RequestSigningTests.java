@@ -89,6 +89,7 @@ public class RequestSigningTests {
                 .getProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
 
             String requestRelayState = "6c72a926-119d-4b4d-b236-f7594a037b0e";
@@ -129,6 +130,7 @@ public class RequestSigningTests {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED,
                             authenticationReqSignedOriginalValue);
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -144,6 +146,7 @@ public class RequestSigningTests {
                 .getProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
 
             String requestRelayState = "6c72a926-119d-4b4d-b236-f7594a037b0e";
@@ -178,6 +181,7 @@ public class RequestSigningTests {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED,
                             authenticationReqSignedOriginalValue);
+            TestUtils.invalidateSAML2Configs();
         }
     }
     /**
@@ -190,6 +194,7 @@ public class RequestSigningTests {
         try {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
 
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
@@ -234,6 +239,7 @@ public class RequestSigningTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -247,6 +253,7 @@ public class RequestSigningTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME,
@@ -280,6 +287,7 @@ public class RequestSigningTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -293,6 +301,7 @@ public class RequestSigningTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME,
@@ -338,9 +347,95 @@ public class RequestSigningTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
+    /**
+     * Test that a signed AuthnRequest is rejected when it is received again.
+     */
+    @Test
+    public void testReplayedSignedRequest() {
+
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
+                .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME,
+                    TestConstants.ACS_URL);
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+            SAML2AuthUtils.addSignatureToHTTPQueryString(httpQueryString, "http://www.w3.org/2000/09/xmldsig#rsa-sha1",
+                    SAML2AuthUtils.getServerCredentials());
 
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+
+            urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String postBody = TestUtils.getContent(urlConnection);
 
+            Assert.assertEquals(urlConnection.getResponseCode(), 200);
+            String samlResponse = postBody.split("SAMLResponse' value='")[1].split("'>")[0];
+            Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+            Assert.assertEquals(samlResponseObject.getAssertions().size(), 0);
+            Assert.assertEquals(samlResponseObject.getStatus().getStatusMessage().getMessage(),
+                    "AuthnRequest " + samlRequest.getID() + " has already been received.");
+        } catch (IOException e) {
+            Assert.fail("Error while running testReplayedSignedRequest test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building response object", e);
+        } finally {
+            serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
+                    .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
+        }
+    }
+
+    /**
+     * Test that an unsigned AuthnRequest sent with post binding is rejected when request signing is required.
+     */
+    @Test
+    public void testUnsignedPostBindingRequest() {
+
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
+                .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String authnRequest = SAML2AuthUtils.encodeForPost((SAML2AuthUtils.marshall(samlRequest)));
+            String postBody = TestConstants.SAML_REQUEST_PARAM + "=" + URLEncoder.encode(authnRequest,
+                    StandardCharsets.UTF_8.name());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    , HttpMethod.POST, true);
+            urlConnection.setDoOutput(true);
+            urlConnection.getOutputStream().write(postBody.getBytes(Charsets.UTF_8));
+            String response = TestUtils.getContent(urlConnection);
+            String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+            Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+            Assert.assertEquals(samlResponseObject.getAssertions().size(), 0);
+            Assert.assertEquals(samlResponseObject.getStatus().getStatusMessage().getMessage(),
+                    "Cannot find Signature element in AuthnRequest.");
+        } catch (IOException e) {
+            Assert.fail("Error while running testUnsignedPostBindingRequest test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building response object", e);
+        } finally {
+            serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
+                    .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
+        }
+    }
 }
@@ -21,6 +21,10 @@ package org.wso2.carbon.identity.authenticator.inbound.saml2sso.test;
 import com.google.common.net.HttpHeaders;
 import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.saml2.core.Response;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.opensaml.xml.util.Base64;
+import org.opensaml.xml.validation.ValidationException;
 import org.ops4j.pax.exam.Configuration;
 import org.ops4j.pax.exam.CoreOptions;
 import org.ops4j.pax.exam.Option;
@@ -33,6 +37,8 @@ import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
+import org.wso2.carbon.identity.auth.saml2.common.KeyStoreConfig;
+import org.wso2.carbon.identity.auth.saml2.common.KeyStoreManager;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
@@ -44,6 +50,9 @@ import java.net.HttpURLConnection;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import javax.inject.Inject;
@@ -58,6 +67,9 @@ public class ResponseSigningTests {
 
     private static final Logger log = LoggerFactory.getLogger(InitialTests.class);
 
+    // EC key pair in the test key store, which is not a signing key unless it is listed in the key store config
+    private static final String EC_KEY_ALIAS = "wso2carbon-ec";
+
     @Inject
     private BundleContext bundleContext;
 
@@ -93,28 +105,144 @@ public class ResponseSigningTests {
                 .DigestAlgorithmURI.MD5);
 //        testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.DSA_SHA1, SAML2AuthConstants.XML
 //                .DigestAlgorithmURI.MD5);
-//        testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA1, SAML2AuthConstants.XML
-//                .DigestAlgorithmURI.MD5);
-//        testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256, SAML2AuthConstants.XML
-//                .DigestAlgorithmURI.MD5);
-//        testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA384, SAML2AuthConstants.XML
-//                .DigestAlgorithmURI.MD5);
     }
 
     /**
-     * Test inbound authentication and successful statement on assertion without configuring nameIDformat.
+     * Test response signing with the EC key of the test key store, selected with SigningKeyAlias.
+     */
+    @Test
+    public void testECDSASignatureAlgorithms() {
+        enableECSigningKey();
+        try {
+            testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA1, SAML2AuthConstants.XML
+                    .DigestAlgorithmURI.SHA256, true, EC_KEY_ALIAS);
+            testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256, SAML2AuthConstants.XML
+                    .DigestAlgorithmURI.SHA256, true, EC_KEY_ALIAS);
+            testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA384, SAML2AuthConstants.XML
+                    .DigestAlgorithmURI.SHA256, true, EC_KEY_ALIAS);
+            testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA512, SAML2AuthConstants.XML
+                    .DigestAlgorithmURI.SHA256, true, EC_KEY_ALIAS);
+        } finally {
+            disableECSigningKey();
+        }
+    }
+
+    /**
+     * Test that a response signed with an EC key without a configured signature algorithm uses ECDSA with SHA256.
+     */
+    @Test
+    public void testDefaultECDSASignatureAlgorithm() {
+        enableECSigningKey();
+        try {
+            testResponseSigning(null, SAML2AuthConstants.XML.DigestAlgorithmURI.SHA256, true, EC_KEY_ALIAS);
+        } finally {
+            disableECSigningKey();
+        }
+    }
+
+    /**
+     * Test that an HTTP-Redirect binding request signed with ECDSA is accepted when the service provider's
+     * certificate has an EC key.
+     */
+    @Test
+    public void testECDSASignedRedirectRequest() {
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        Properties originalReqValidatorConfigs = serviceProviderConfig.getRequestValidationConfig()
+                .getRequestValidatorConfigs().get(0).getProperties();
+        enableECSigningKey();
+        try {
+            X509Credential ecCredential = SAML2AuthUtils.getServerCredentials(EC_KEY_ALIAS);
+            Properties newReqValidatorConfigs = (Properties) originalReqValidatorConfigs.clone();
+            newReqValidatorConfigs.put(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+            newReqValidatorConfigs.put(SAML2AuthConstants.Config.Name.SIGNING_CERTIFICATE,
+                    Base64.encodeBytes(ecCredential.getEntityCertificate().getEncoded(), Base64.DONT_BREAK_LINES));
+            serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).setProperties
+                    (newReqValidatorConfigs);
+
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" +
+                    SAML2AuthUtils.encodeForRedirect(samlRequest));
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+            SAML2AuthUtils.addSignatureToHTTPQueryString(httpQueryString,
+                    SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256, ecCredential);
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+        } catch (IOException | CertificateEncodingException e) {
+            Assert.fail("Error while running testECDSASignedRedirectRequest test case", e);
+        } finally {
+            serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).setProperties
+                    (originalReqValidatorConfigs);
+            disableECSigningKey();
+        }
+    }
+
+    /**
+     * Test that the assertion signature is intact when the enclosing response is not signed.
      */
+    @Test
+    public void testAssertionSignatureWithUnsignedResponse() {
+        testResponseSigning(SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA256, SAML2AuthConstants.XML
+                .DigestAlgorithmURI.SHA256, false);
+    }
+
     private void testResponseSigning(String signingAlgorithm, String digestAlgorithm) {
+        testResponseSigning(signingAlgorithm, digestAlgorithm, true);
+    }
+
+    private void testResponseSigning(String signingAlgorithm, String digestAlgorithm, boolean signResponse) {
+        testResponseSigning(signingAlgorithm, digestAlgorithm, signResponse, null);
+    }
+
+    /**
+     * Makes the EC key of the test key store available to service providers through SigningKeyAlias.
+     */
+    private void enableECSigningKey() {
+        KeyStoreConfig.getInstance().setSigningKeyAliases(Collections.singletonList(EC_KEY_ALIAS));
+        KeyStoreManager.getInstance().reloadKeyStore();
+    }
+
+    private void disableECSigningKey() {
+        KeyStoreConfig.getInstance().setSigningKeyAliases(new ArrayList<>());
+        KeyStoreManager.getInstance().reloadKeyStore();
+    }
+
+    /**
+     * Test inbound authentication and successful statement on assertion without configuring nameIDformat. A null
+     * signing algorithm leaves the algorithm to be chosen from the signing key, and a null signing key alias signs
+     * with the default key.
+     */
+    private void testResponseSigning(String signingAlgorithm, String digestAlgorithm, boolean signResponse,
+                                     String signingKeyAlias) {
         ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         Properties originalResponseBuilderConfigs = (Properties) serviceProviderConfig.getResponseBuildingConfig()
                 .getResponseBuilderConfigs().get(0).getProperties().clone();
         serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                 .put(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
-        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties().put
-                (SAML2AuthConstants.Config.Name.SIGNATURE_ALGO, signingAlgorithm);
+        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
+                .put(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED, String.valueOf(signResponse));
+        if (signingAlgorithm != null) {
+            serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties().put
+                    (SAML2AuthConstants.Config.Name.SIGNATURE_ALGO, signingAlgorithm);
+        } else {
+            serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
+                    .remove(SAML2AuthConstants.Config.Name.SIGNATURE_ALGO);
+        }
+        if (signingKeyAlias != null) {
+            serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties().put
+                    (SAML2AuthConstants.Config.Name.SIGNING_KEY_ALIAS, signingKeyAlias);
+        }
         serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties().put
                 (SAML2AuthConstants.Config.Name.DIGEST_ALGO, digestAlgorithm);
+        TestUtils.invalidateSAML2Configs();
+        String expectedAlgorithm = signingAlgorithm != null ? signingAlgorithm :
+                SAML2AuthConstants.XML.SignatureAlgorithmURI.ECDSA_SHA256;
 
         try {
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
@@ -147,9 +275,19 @@ public class ResponseSigningTests {
             String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
             try {
                 Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
-                Assert.assertEquals(signingAlgorithm, samlResponseObject.getSignature().getSignatureAlgorithm());
+                SignatureValidator validator = new SignatureValidator(SAML2AuthUtils.getServerCredentials(
+                        signingKeyAlias));
+                if (signResponse) {
+                    Assert.assertEquals(expectedAlgorithm, samlResponseObject.getSignature().getSignatureAlgorithm());
+                    validator.validate(samlResponseObject.getSignature());
+                } else {
+                    Assert.assertNull(samlResponseObject.getSignature());
+                }
+                validator.validate(samlResponseObject.getAssertions().get(0).getSignature());
             } catch (SAML2SSOServerException e) {
                 Assert.fail("Error while asserting on encrypted assertions test case", e);
+            } catch (ValidationException e) {
+                Assert.fail("Signature of the SAML response does not verify", e);
             }
         } catch (IOException e) {
             Assert.fail("Error while running testSAMLInboundAuthentication test case", e);
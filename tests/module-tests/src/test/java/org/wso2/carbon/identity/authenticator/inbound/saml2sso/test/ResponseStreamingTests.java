@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.inbound.saml2sso.test;
+
+import com.google.common.net.HttpHeaders;
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLVersion;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.Status;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.core.StatusMessage;
+import org.opensaml.saml2.core.Subject;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.opensaml.xml.validation.ValidationException;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.CoreOptions;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerSuite;
+import org.ops4j.pax.exam.testng.listener.PaxExam;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
+import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.response.SAMLResponseWriter;
+import org.wso2.carbon.identity.gateway.common.model.sp.ServiceProviderConfig;
+import org.wso2.carbon.kernel.utils.CarbonServerInfo;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Tests for writing unsigned SAML responses as a stream.
+ */
+@Listeners(PaxExam.class)
+@ExamReactorStrategy(PerSuite.class)
+public class ResponseStreamingTests {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseStreamingTests.class);
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    private CarbonServerInfo carbonServerInfo;
+
+
+    @Configuration
+    public Option[] createConfiguration() {
+
+        List<Option> optionList = OSGiTestUtils.getDefaultSecurityPAXOptions();
+
+        optionList.add(CoreOptions.systemProperty("java.security.auth.login.config")
+                .value(Paths.get(OSGiTestUtils.getCarbonHome(), "conf", "security", "carbon-jaas.config")
+                        .toString()));
+
+        return optionList.toArray(new Option[optionList.size()]);
+    }
+
+    /**
+     * Test that a streamed response is the same document as the marshalled response, irrespective of attribute
+     * order and serialization details.
+     */
+    @Test
+    public void testStreamedResponseMatchesMarshalledResponse() {
+
+        Response response = buildResponse();
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        SAMLResponseWriter.write(response, streamed);
+        String marshalled = SAML2AuthUtils.marshall(response);
+
+        try {
+            DocumentBuilder documentBuilder = newDocumentBuilder();
+            Document streamedDocument = documentBuilder.parse(new ByteArrayInputStream(streamed.toByteArray()));
+            Document marshalledDocument = documentBuilder.parse(new InputSource(new StringReader(marshalled)));
+            streamedDocument.normalizeDocument();
+            marshalledDocument.normalizeDocument();
+            Assert.assertTrue(streamedDocument.getDocumentElement().isEqualNode(
+                    marshalledDocument.getDocumentElement()), "Streamed response differs from the marshalled " +
+                    "response.\nStreamed: " + new String(streamed.toByteArray(), StandardCharsets.UTF_8) +
+                    "\nMarshalled: " + marshalled);
+
+            Response streamedResponse = (Response) SAML2AuthUtils.unmarshall(
+                    new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+            new SignatureValidator(SAML2AuthUtils.getServerCredentials()).validate(
+                    streamedResponse.getAssertions().get(0).getSignature());
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            Assert.fail("Error while parsing the SAML response", e);
+        } catch (ValidationException e) {
+            Assert.fail("Signature of the streamed assertion does not verify", e);
+        }
+    }
+
+    /**
+     * Test inbound authentication with response streaming enabled for the service provider.
+     */
+    @Test
+    public void testStreamedResponse() {
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        Properties originalResponseBuilderConfigs = (Properties) serviceProviderConfig.getResponseBuildingConfig()
+                .getResponseBuilderConfigs().get(0).getProperties().clone();
+        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
+                .put(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
+                .put(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED, "false");
+        serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
+                .put(SAML2AuthConstants.Config.Name.RESPONSE_STREAMING, "true");
+        TestUtils.invalidateSAML2Configs();
+
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+            SAML2AuthUtils.addSignatureToHTTPQueryString(httpQueryString, "http://www.w3.org/2000/09/xmldsig#rsa-sha1",
+                    SAML2AuthUtils.getServerCredentials());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.RELAY_STATE));
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+
+            String relayState = locationHeader.split(TestConstants.RELAY_STATE + "=")[1];
+            relayState = relayState.split(TestConstants.QUERY_PARAM_SEPARATOR)[0];
+
+            urlConnection = TestUtils.request
+                    (TestConstants.GATEWAY_ENDPOINT + "?" + TestConstants.RELAY_STATE + "=" + relayState +
+                            "&" + TestConstants.ASSERTION + "=" +
+                            TestConstants.AUTHENTICATED_USER_NAME, HttpMethod.GET, false);
+
+            String response = TestUtils.getContent(urlConnection);
+
+            String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+            try {
+                Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+                Assert.assertNull(samlResponseObject.getSignature());
+                Assert.assertEquals(samlResponseObject.getStatus().getStatusCode().getValue(), StatusCode.SUCCESS_URI);
+                Assert.assertEquals(samlResponseObject.getAssertions().get(0).getSubject().getNameID().getValue(),
+                                    TestConstants.AUTHENTICATED_USER_NAME);
+                new SignatureValidator(SAML2AuthUtils.getServerCredentials()).validate(
+                        samlResponseObject.getAssertions().get(0).getSignature());
+            } catch (SAML2SSOServerException e) {
+                Assert.fail("Error while reading the streamed SAML response", e);
+            } catch (ValidationException e) {
+                Assert.fail("Signature of the streamed assertion does not verify", e);
+            }
+        } catch (IOException e) {
+            Assert.fail("Error while running testStreamedResponse test case", e);
+        } finally {
+            serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).setProperties
+                    (originalResponseBuilderConfigs);
+        }
+    }
+
+    private Response buildResponse() {
+
+        Response response = (Response) SAML2AuthUtils.buildXMLObject(Response.DEFAULT_ELEMENT_NAME);
+        response.setID(SAML2AuthUtils.createID());
+        response.setInResponseTo(SAML2AuthUtils.createID());
+        response.setDestination(TestConstants.ACS_URL);
+        response.setVersion(SAMLVersion.VERSION_20);
+        response.setIssueInstant(new DateTime());
+        response.setIssuer(buildIssuer());
+
+        Status status = (Status) SAML2AuthUtils.buildXMLObject(Status.DEFAULT_ELEMENT_NAME);
+        StatusCode statusCode = (StatusCode) SAML2AuthUtils.buildXMLObject(StatusCode.DEFAULT_ELEMENT_NAME);
+        statusCode.setValue(StatusCode.RESPONDER_URI);
+        StatusCode subStatusCode = (StatusCode) SAML2AuthUtils.buildXMLObject(StatusCode.DEFAULT_ELEMENT_NAME);
+        subStatusCode.setValue(StatusCode.AUTHN_FAILED_URI);
+        statusCode.setStatusCode(subStatusCode);
+        status.setStatusCode(statusCode);
+        StatusMessage statusMessage = (StatusMessage) SAML2AuthUtils.buildXMLObject(
+                StatusMessage.DEFAULT_ELEMENT_NAME);
+        statusMessage.setMessage("Message with markup <&>");
+        status.setStatusMessage(statusMessage);
+        response.setStatus(status);
+
+        Assertion assertion = (Assertion) SAML2AuthUtils.buildXMLObject(Assertion.DEFAULT_ELEMENT_NAME);
+        assertion.setID(SAML2AuthUtils.createID());
+        assertion.setVersion(SAMLVersion.VERSION_20);
+        assertion.setIssueInstant(new DateTime());
+        assertion.setIssuer(buildIssuer());
+        Subject subject = (Subject) SAML2AuthUtils.buildXMLObject(Subject.DEFAULT_ELEMENT_NAME);
+        NameID nameID = (NameID) SAML2AuthUtils.buildXMLObject(NameID.DEFAULT_ELEMENT_NAME);
+        nameID.setValue(TestConstants.AUTHENTICATED_USER_NAME);
+        subject.setNameID(nameID);
+        assertion.setSubject(subject);
+        SAML2AuthUtils.setSignature(assertion, SAML2AuthConstants.XML.SignatureAlgorithmURI.RSA_SHA256,
+                                    SAML2AuthConstants.XML.DigestAlgorithmURI.SHA256, true,
+                                    SAML2AuthUtils.getServerCredentials());
+        response.getAssertions().add(assertion);
+        return response;
+    }
+
+    private Issuer buildIssuer() {
+
+        Issuer issuer = (Issuer) SAML2AuthUtils.buildXMLObject(Issuer.DEFAULT_ELEMENT_NAME);
+        issuer.setFormat(NameID.ENTITY);
+        issuer.setValue("localhost");
+        return issuer;
+    }
+
+    private DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        return documentBuilderFactory.newDocumentBuilder();
+    }
+}
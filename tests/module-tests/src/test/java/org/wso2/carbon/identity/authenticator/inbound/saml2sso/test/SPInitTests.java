@@ -36,10 +36,13 @@ import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthConstants;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
+import org.wso2.carbon.identity.auth.saml2.common.SigningService;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.request.SAMLRequestGuard;
 import org.wso2.carbon.identity.gateway.common.model.sp.ServiceProviderConfig;
 import org.wso2.carbon.kernel.utils.CarbonServerInfo;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
@@ -47,6 +50,9 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.inject.Inject;
 import javax.ws.rs.HttpMethod;
 
@@ -188,6 +194,7 @@ public class SPInitTests {
 
             String relayState = locationHeader.split(TestConstants.RELAY_STATE + "=")[1];
             relayState = relayState.split(TestConstants.QUERY_PARAM_SEPARATOR)[0];
+            long signedCount = SigningService.getInstance().getSignedCount();
 
             urlConnection = TestUtils.request
                     (TestConstants.GATEWAY_ENDPOINT + "?" + TestConstants.RELAY_STATE + "=" +
@@ -204,6 +211,8 @@ public class SPInitTests {
                 Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
                 Assert.assertEquals(samlResponseObject.getAssertions().get(0).getSubject().getNameID().getValue(),
                                     TestConstants.AUTHENTICATED_USER_NAME);
+                // the response of the sample service provider is signed
+                Assert.assertTrue(SigningService.getInstance().getSignedCount() > signedCount);
             } catch (SAML2SSOServerException e) {
                 Assert.fail("Error while building response object", e);
             }
@@ -223,6 +232,7 @@ public class SPInitTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
             HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
                                                                 + "?" + TestConstants.SAML_REQUEST_PARAM + "=" + TestConstants
@@ -240,6 +250,7 @@ public class SPInitTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -277,6 +288,190 @@ public class SPInitTests {
         }
     }
 
+    /**
+     * Sending out an authentication request whose issuer is given only as an SPProvidedID and assert that the service
+     * provider is resolved from it.
+     */
+    @Test
+    public void testSAMLRequestWithSPProvidedIDIssuer() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, "", TestConstants.ACS_URL);
+            samlRequest.getIssuer().setSPProvidedID(TestConstants.SAMPLE_ISSUER_NAME);
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+        } catch (IOException e) {
+            Assert.fail("Error while running testSAMLRequestWithSPProvidedIDIssuer test case", e);
+        }
+    }
+
+    /**
+     * Sending out an authentication request with a pretty-printed issuer and assert that the issuer is trimmed before
+     * the service provider is resolved.
+     */
+    @Test
+    public void testSAMLRequestWithPrettyPrintedIssuer() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String authnRequest = SAML2AuthUtils.marshall(samlRequest).replace(
+                    ">" + TestConstants.SAMPLE_ISSUER_NAME + "</", ">\n    " + TestConstants.SAMPLE_ISSUER_NAME + "\n</");
+
+            HttpURLConnection urlConnection = postSAMLRequest(authnRequest);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+        } catch (IOException e) {
+            Assert.fail("Error while running testSAMLRequestWithPrettyPrintedIssuer test case", e);
+        }
+    }
+
+    /**
+     * Sending out an authentication request with a second Issuer element and assert that it is rejected, since the
+     * request is routed by the first Issuer while OpenSAML keeps the last one.
+     */
+    @Test
+    public void testSAMLRequestWithDuplicateIssuer() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String authnRequest = SAML2AuthUtils.marshall(samlRequest);
+            int issuerStart = authnRequest.lastIndexOf('<', authnRequest.indexOf("Issuer"));
+            int issuerEnd = authnRequest.indexOf('>', authnRequest.indexOf("</", issuerStart)) + 1;
+            String issuer = authnRequest.substring(issuerStart, issuerEnd);
+            authnRequest = authnRequest.substring(0, issuerEnd) + issuer.replace(TestConstants.SAMPLE_ISSUER_NAME,
+                    "other.example.com") + authnRequest.substring(issuerEnd);
+
+            HttpURLConnection urlConnection = postSAMLRequest(authnRequest);
+            Assert.assertEquals(getStatusMessage(urlConnection), "AuthnRequest has ambiguous Issuer, ID, " +
+                    "AssertionConsumerServiceURL or Destination values.");
+        } catch (IOException | SAML2SSOServerException e) {
+            Assert.fail("Error while running testSAMLRequestWithDuplicateIssuer test case", e);
+        }
+    }
+
+    /**
+     * Sending out an authentication request with a namespace qualified AssertionConsumerServiceURL attribute besides
+     * the unqualified one and assert that it is rejected, since OpenSAML reads both as the same attribute.
+     */
+    @Test
+    public void testSAMLRequestWithNamespacedACS() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            String authnRequest = SAML2AuthUtils.marshall(samlRequest);
+            int rootNameEnd = authnRequest.indexOf(' ', authnRequest.indexOf("AuthnRequest"));
+            authnRequest = authnRequest.substring(0, rootNameEnd) + " xmlns:x=\"urn:x\" " +
+                    "x:AssertionConsumerServiceURL=\"https://localhost:8080/otherACS\"" +
+                    authnRequest.substring(rootNameEnd);
+
+            HttpURLConnection urlConnection = postSAMLRequest(authnRequest);
+            Assert.assertEquals(getStatusMessage(urlConnection), "AuthnRequest has ambiguous Issuer, ID, " +
+                    "AssertionConsumerServiceURL or Destination values.");
+        } catch (IOException | SAML2SSOServerException e) {
+            Assert.fail("Error while running testSAMLRequestWithNamespacedACS test case", e);
+        }
+    }
+
+    /**
+     * Sending out an authentication request that is nested deeper than allowed and assert that it is rejected before
+     * it is parsed.
+     */
+    @Test
+    public void testSAMLRequestExceedingDepthLimit() {
+        try {
+            StringBuilder xml = new StringBuilder("<samlp:AuthnRequest xmlns:samlp=\"" +
+                    "urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_1\" Version=\"2.0\" " +
+                    "IssueInstant=\"2017-01-01T00:00:00Z\"><samlp:Extensions>");
+            for (int i = 0; i < 40; i++) {
+                xml.append("<a>");
+            }
+            for (int i = 0; i < 40; i++) {
+                xml.append("</a>");
+            }
+            xml.append("</samlp:Extensions></samlp:AuthnRequest>");
+
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(byteArrayOutputStream,
+                    new Deflater(Deflater.DEFLATED, true));
+            deflaterOutputStream.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+            deflaterOutputStream.close();
+            String samlRequestString = URLEncoder.encode(org.opensaml.xml.util.Base64.encodeBytes(
+                    byteArrayOutputStream.toByteArray(), org.opensaml.xml.util.Base64.DONT_BREAK_LINES),
+                    StandardCharsets.UTF_8.name());
+
+            long rejectionCount = SAMLRequestGuard.getInstance().getRejectionCount(SAMLRequestGuard.Rejection.DEPTH);
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT + "?" +
+                    SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString, HttpMethod.GET, false);
+
+            Assert.assertEquals(urlConnection.getResponseCode(), 200);
+            String response = TestUtils.getContent(urlConnection);
+            String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+            Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+            Assert.assertEquals(samlResponseObject.getAssertions().size(), 0);
+            Assert.assertEquals(samlResponseObject.getStatus().getStatusMessage().getMessage(),
+                    "SAMLRequest is nested deeper than 32 elements.");
+            Assert.assertEquals(SAMLRequestGuard.getInstance().getRejectionCount(SAMLRequestGuard.Rejection.DEPTH),
+                    rejectionCount + 1);
+        } catch (IOException e) {
+            Assert.fail("Error while running testSAMLRequestExceedingDepthLimit test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building Response object from SAMLResponse message.", e);
+        }
+    }
+
+    /**
+     * Sending out a GZIP compressed authentication request with post binding and assert that it is rejected without
+     * being decompressed.
+     */
+    @Test
+    public void testGzipCompressedPostSAMLRequest() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
+            StringBuilder xml = new StringBuilder(SAML2AuthUtils.marshall(samlRequest));
+            // trailing white space is well-formed, but makes the request larger than allowed once decompressed
+            for (int i = 0; i < 1024 * 1024; i++) {
+                xml.append(' ');
+            }
+
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
+            gzipOutputStream.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+            gzipOutputStream.close();
+            String postBody = TestConstants.SAML_REQUEST_PARAM + "=" + URLEncoder.encode(
+                    org.opensaml.xml.util.Base64.encodeBytes(byteArrayOutputStream.toByteArray(),
+                    org.opensaml.xml.util.Base64.DONT_BREAK_LINES), StandardCharsets.UTF_8.name());
+
+            SAMLRequestGuard guard = SAMLRequestGuard.getInstance();
+            long rejectionCount = guard.getRejectionCount(SAMLRequestGuard.Rejection.MALFORMED) +
+                    guard.getRejectionCount(SAMLRequestGuard.Rejection.INFLATED_SIZE);
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT, HttpMethod.POST,
+                    false);
+            urlConnection.setDoOutput(true);
+            urlConnection.getOutputStream().write(postBody.getBytes(Charsets.UTF_8));
+
+            Assert.assertEquals(urlConnection.getResponseCode(), 200);
+            String response = TestUtils.getContent(urlConnection);
+            String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+            Response samlResponseObject = TestUtils.getSAMLResponse(samlResponse);
+            Assert.assertEquals(samlResponseObject.getAssertions().size(), 0);
+            Assert.assertEquals(guard.getRejectionCount(SAMLRequestGuard.Rejection.MALFORMED) +
+                    guard.getRejectionCount(SAMLRequestGuard.Rejection.INFLATED_SIZE), rejectionCount + 1);
+        } catch (IOException e) {
+            Assert.fail("Error while running testGzipCompressedPostSAMLRequest test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building Response object from SAMLResponse message.", e);
+        }
+    }
+
     /**
      * Sending out a request with non existing issuer
      */
@@ -323,6 +518,7 @@ public class SPInitTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_ENCRYPTED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
 
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
@@ -370,6 +566,7 @@ public class SPInitTests {
         } finally {
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_ENCRYPTED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -383,6 +580,7 @@ public class SPInitTests {
                     (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
 
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
@@ -439,6 +637,7 @@ public class SPInitTests {
                     (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_RESPONSE_SIGNED, "true");
+            TestUtils.invalidateSAML2Configs();
 
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                     false, false, TestConstants.SAMPLE_ISSUER_NAME, TestConstants.ACS_URL);
@@ -500,6 +699,7 @@ public class SPInitTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
                                                                    false, false, TestConstants.SAMPLE_ISSUER_NAME,
@@ -533,6 +733,7 @@ public class SPInitTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -546,6 +747,7 @@ public class SPInitTests {
                 (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
         serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "true");
+        TestUtils.invalidateSAML2Configs();
         try {
 
             String requestRelayState = "6c72a926-119d-4b4d-b236-f7594a037b0e";
@@ -590,6 +792,7 @@ public class SPInitTests {
         } finally {
             serviceProviderConfig.getRequestValidationConfig().getRequestValidatorConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.AUTHN_REQUEST_SIGNED, "false");
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -609,6 +812,7 @@ public class SPInitTests {
                 .setProperty(SAML2AuthConstants.Config.Name.SIGNING_CERTIFICATE, "invalid_cert");
         serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                 .setProperty(SAML2AuthConstants.Config.Name.ENCRYPTION_CERTIFICATE, "invalid_cert");
+        TestUtils.invalidateSAML2Configs();
 
         try {
             AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
@@ -645,6 +849,7 @@ public class SPInitTests {
                     .setProperty(SAML2AuthConstants.Config.Name.SIGNING_CERTIFICATE, correctCert);
             serviceProviderConfig.getResponseBuildingConfig().getResponseBuilderConfigs().get(0).getProperties()
                     .setProperty(SAML2AuthConstants.Config.Name.ENCRYPTION_CERTIFICATE, correctCert);
+            TestUtils.invalidateSAML2Configs();
         }
     }
 
@@ -786,6 +991,76 @@ public class SPInitTests {
         }
     }
 
+    /**
+     * SAML request with an ACS that differs from the registered one only in scheme and host case and default port.
+     */
+    @Test
+    public void testWithNonNormalizedACS() {
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME,
+                    "HTTP://LocalHost:80/travelocity.com/home.jsp");
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.RELAY_STATE));
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+        } catch (IOException e) {
+            Assert.fail("Error while running testWithNonNormalizedACS test case", e);
+        }
+    }
+
+    /**
+     * SAML request with an ACS that is added to the registered ACS list in place, after the service provider's
+     * configuration has been cached.
+     */
+    @Test
+    public void testWithACSAddedInPlace() {
+        ServiceProviderConfig serviceProviderConfig = TestUtils.getServiceProviderConfigs
+                (TestConstants.SAMPLE_ISSUER_NAME, bundleContext);
+        List<String> assertionConsumerUrls = (List<String>) serviceProviderConfig.getRequestValidationConfig()
+                .getRequestValidatorConfigs().get(0).getProperties()
+                .get(SAML2AuthConstants.Config.Name.ASSERTION_CONSUMER_URLS);
+        String addedACS = "https://localhost:8080/addedACS";
+        try {
+            AuthnRequest samlRequest = TestUtils.buildAuthnRequest("https://localhost:9292/gateway",
+                    false, false, TestConstants.SAMPLE_ISSUER_NAME, addedACS);
+            String samlRequestString = SAML2AuthUtils.encodeForRedirect(samlRequest);
+
+            StringBuilder httpQueryString = new StringBuilder(SAML2AuthConstants.SAML_REQUEST + "=" + samlRequestString);
+            httpQueryString.append("&" + SAML2AuthConstants.RELAY_STATE + "=" + URLEncoder.encode("relayState",
+                    StandardCharsets.UTF_8.name()).trim());
+
+            HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String response = TestUtils.getContent(urlConnection);
+            Response samlResponseObject = TestUtils.getSAMLResponse(response.split("SAMLResponse' value='")[1]
+                    .split("'>")[0]);
+            Assert.assertEquals(samlResponseObject.getStatus().getStatusMessage().getMessage(),
+                    "Invalid Assertion Consumer Service URL in the AuthnRequest message.");
+
+            assertionConsumerUrls.add(addedACS);
+            TestUtils.invalidateSAML2Configs();
+            urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT
+                    + "?" + httpQueryString.toString(), HttpMethod.GET, false);
+            String locationHeader = TestUtils.getResponseHeader(HttpHeaders.LOCATION, urlConnection);
+            Assert.assertTrue(locationHeader.contains(TestConstants.EXTERNAL_IDP));
+        } catch (IOException e) {
+            Assert.fail("Error while running testWithACSAddedInPlace test case", e);
+        } catch (SAML2SSOServerException e) {
+            Assert.fail("Error while building response object", e);
+        } finally {
+            assertionConsumerUrls.remove(addedACS);
+            TestUtils.invalidateSAML2Configs();
+        }
+    }
+
     /**
      * SAML request without signature validation turned on.
      */
@@ -871,4 +1146,19 @@ public class SPInitTests {
                 (newResponseBuilderConfigs);
     }
 
+    private String getStatusMessage(HttpURLConnection urlConnection) throws IOException, SAML2SSOServerException {
+        String response = TestUtils.getContent(urlConnection);
+        String samlResponse = response.split("SAMLResponse' value='")[1].split("'>")[0];
+        return TestUtils.getSAMLResponse(samlResponse).getStatus().getStatusMessage().getMessage();
+    }
+
+    private HttpURLConnection postSAMLRequest(String authnRequest) throws IOException {
+
+        String postBody = TestConstants.SAML_REQUEST_PARAM + "=" + URLEncoder.encode(
+                SAML2AuthUtils.encodeForPost(authnRequest), StandardCharsets.UTF_8.name());
+        HttpURLConnection urlConnection = TestUtils.request(TestConstants.GATEWAY_ENDPOINT, HttpMethod.POST, true);
+        urlConnection.setDoOutput(true);
+        urlConnection.getOutputStream().write(postBody.getBytes(Charsets.UTF_8));
+        return urlConnection;
+    }
 }
@@ -54,6 +54,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.identity.auth.saml2.common.SAML2AuthUtils;
 import org.wso2.carbon.identity.authenticator.inbound.saml2sso.exception.SAML2SSOServerException;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.RequestValidatorConfig;
+import org.wso2.carbon.identity.authenticator.inbound.saml2sso.model.ResponseBuilderConfig;
 import org.wso2.carbon.identity.gateway.common.model.sp.ServiceProviderConfig;
 import org.wso2.carbon.identity.gateway.store.ServiceProviderConfigStore;
 
@@ -108,6 +110,15 @@ public class TestUtils {
         return serviceProviderConfigStore.getServiceProvider(uniqueId);
     }
 
+    /**
+     * Drops the cached SAML2 configs of the service providers. Call after editing the configuration properties of a
+     * service provider in place.
+     */
+    public static void invalidateSAML2Configs() {
+        RequestValidatorConfig.invalidateAll();
+        ResponseBuilderConfig.invalidateAll();
+    }
+
 
     public static AuthnRequest buildAuthnRequest(String idpUrl, boolean isForce, boolean isPassive, String
             issuerName, String acsUrl) {